@@ -0,0 +1,279 @@
+import java.util.*;
+
+public final class CompiledFsa {
+    //An immutable, integer-encoded copy of an Fsa, for simulation and analysis.
+    //States are numbered 0..stateCount()-1 and events 0..eventCount()-1.
+    //The transitions from state s are stored (CSR style) in edgeEvent/edgeTarget,
+    //at the indices edgeStart[s] to edgeStart[s+1]-1, sorted by event.
+    //Epsilon-transitions are stored separately in the same way in epsilonStart/epsilonTarget.
+    //Epsilon-closures are not stored, as they can take space quadratic in the number of states
+    //(a chain of epsilon-transitions); a simulator follows the epsilon-transitions as it steps.
+    //A CompiledFsa is never changed after it is built, so it can be shared between threads.
+    private final String[] stateNames;
+    private final Map<String, Integer> stateIds;
+    private final String[] eventNames;
+    private final Map<String, Integer> eventIds;
+    private final int[] edgeStart;
+    private final int[] edgeEvent;
+    private final int[] edgeTarget;
+    private final int[] epsilonStart;
+    private final int[] epsilonTarget;
+    private final BitSet initialStates;
+    private final BitSet finalStates;
+
+    //Compile the states and transitions of the Fsa, f.
+    public CompiledFsa(Fsa f) {
+        int n = f.getStates().size();
+        this.stateNames = new String[n];
+        this.stateIds = new HashMap<String, Integer>(n * 2);
+        this.eventIds = new HashMap<String, Integer>();
+        BitSet initial = new BitSet(n);
+        BitSet finals = new BitSet(n);
+
+        //Number the states, and count the transitions from each one.
+        State[] states = new State[n];
+        this.edgeStart = new int[n + 1];
+        this.epsilonStart = new int[n + 1];
+        int id = 0;
+        Iterator it = f.getStates().iterator();
+        while (it.hasNext()) {
+            State nextState = (State)it.next();
+            states[id] = nextState;
+            this.stateNames[id] = nextState.getName();
+            this.stateIds.put(nextState.getName(), id);
+            if (nextState.isInitial()) {
+                initial.set(id);
+            }
+
+            if (nextState.isFinal()) {
+                finals.set(id);
+            }
+
+            int epsilons = nextState.transitionsFrom(null).size();
+            this.epsilonStart[id + 1] = this.epsilonStart[id] + epsilons;
+            this.edgeStart[id + 1] = this.edgeStart[id] + nextState.transitionsFrom().size() - epsilons;
+            id++;
+        }
+
+        //Fill each state's row with (event, target) pairs, packed into longs so a row sorts by event.
+        long[] packed = new long[this.edgeStart[n]];
+        this.epsilonTarget = new int[this.epsilonStart[n]];
+        for (int s = 0; s < n; s++) {
+            int edge = this.edgeStart[s];
+            int epsilon = this.epsilonStart[s];
+            it = states[s].transitionsFrom().iterator();
+            while (it.hasNext()) {
+                Transition nextTransition = (Transition)it.next();
+                int target = this.stateIds.get(nextTransition.toState().getName());
+                String event = nextTransition.eventName();
+                if (event == null || event.length() == 0) {
+                    this.epsilonTarget[epsilon++] = target;
+                }
+
+                else {
+                    packed[edge++] = ((long)this.internEvent(event) << 32) | target;
+                }
+            }
+
+            Arrays.sort(packed, this.edgeStart[s], this.edgeStart[s + 1]);
+        }
+
+        this.edgeEvent = new int[packed.length];
+        this.edgeTarget = new int[packed.length];
+        for (int i = 0; i < packed.length; i++) {
+            this.edgeEvent[i] = (int)(packed[i] >>> 32);
+            this.edgeTarget[i] = (int)packed[i];
+        }
+
+        this.eventNames = new String[this.eventIds.size()];
+        Iterator<Map.Entry<String, Integer>> entries = this.eventIds.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<String, Integer> entry = entries.next();
+            this.eventNames[entry.getValue()] = entry.getKey();
+        }
+
+        //Store the bitmaps trimmed to size, as cloning an untrimmed BitSet writes to it.
+        this.initialStates = BitSet.valueOf(initial.toLongArray());
+        this.finalStates = BitSet.valueOf(finals.toLongArray());
+    }
+
+    //Build a CompiledFsa from arrays already in its layout, as read by FsaBinaryReaderWriter.
+    //Each row of edgeEvent/edgeTarget must already be sorted by event, and the arrays are not copied.
+    CompiledFsa(String[] stateNamesIn, String[] eventNamesIn, int[] edgeStartIn, int[] edgeEventIn, int[] edgeTargetIn,
+        int[] epsilonStartIn, int[] epsilonTargetIn, BitSet initial, BitSet finals) {
+        int n = stateNamesIn.length;
+        this.stateNames = stateNamesIn;
+        this.eventNames = eventNamesIn;
+        this.stateIds = new HashMap<String, Integer>(n * 2);
+        for (int s = 0; s < n; s++) {
+            this.stateIds.put(stateNamesIn[s], s);
+        }
+
+        this.eventIds = new HashMap<String, Integer>(eventNamesIn.length * 2);
+        for (int e = 0; e < eventNamesIn.length; e++) {
+            this.eventIds.put(eventNamesIn[e], e);
+        }
+
+        this.edgeStart = edgeStartIn;
+        this.edgeEvent = edgeEventIn;
+        this.edgeTarget = edgeTargetIn;
+        this.epsilonStart = epsilonStartIn;
+        this.epsilonTarget = epsilonTargetIn;
+        this.initialStates = BitSet.valueOf(initial.toLongArray());
+        this.finalStates = BitSet.valueOf(finals.toLongArray());
+    }
+
+    //Return the id of the event, adding it to the symbol table if it is new.
+    private int internEvent(String event) {
+        Integer eventId = this.eventIds.get(event);
+        if (eventId == null) {
+            eventId = this.eventIds.size();
+            this.eventIds.put(event, eventId);
+        }
+
+        return eventId;
+    }
+
+    //Return the number of states
+    public int stateCount() {
+        return this.stateNames.length;
+    }
+
+    //Return the number of (non-epsilon) events
+    public int eventCount() {
+        return this.eventNames.length;
+    }
+
+    //Return the id of the state with the given name, or -1 if there is none
+    public int stateId(String stateName) {
+        Integer stateId = this.stateIds.get(stateName);
+        if (stateId == null) {
+            return -1;
+        }
+
+        return stateId;
+    }
+
+    //Return the name of the state with the given id
+    public String stateName(int state) {
+        return this.stateNames[state];
+    }
+
+    //Return the id of the event, or -1 if no transition has that event
+    //event==null or "" (epsilon) also returns -1
+    public int eventId(String event) {
+        if (event == null) {
+            return -1;
+        }
+
+        Integer eventId = this.eventIds.get(event);
+        if (eventId == null) {
+            return -1;
+        }
+
+        return eventId;
+    }
+
+    //Return the name of the event with the given id
+    public String eventName(int event) {
+        return this.eventNames[event];
+    }
+
+    //Return the index of the first transition from the state
+    public int edgesFrom(int state) {
+        return this.edgeStart[state];
+    }
+
+    //Return the index after the last transition from the state
+    public int edgesEnd(int state) {
+        return this.edgeStart[state + 1];
+    }
+
+    //Return the index of the first transition from the state caused by the event,
+    //or -1 if there is none.
+    //The other transitions for the event follow it, up to edgesEnd(state).
+    public int firstEdge(int state, int event) {
+        //Binary search for the first edge of the row with this event.
+        int low = this.edgeStart[state];
+        int high = this.edgeStart[state + 1];
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (this.edgeEvent[mid] < event) {
+                low = mid + 1;
+            }
+
+            else {
+                high = mid;
+            }
+        }
+
+        if (low < this.edgeStart[state + 1] && this.edgeEvent[low] == event) {
+            return low;
+        }
+
+        return -1;
+    }
+
+    //Return the event of the transition at the index
+    public int edgeEvent(int edge) {
+        return this.edgeEvent[edge];
+    }
+
+    //Return the to-state of the transition at the index
+    public int edgeTarget(int edge) {
+        return this.edgeTarget[edge];
+    }
+
+    //Return the index of the first epsilon-transition from the state
+    public int epsilonFrom(int state) {
+        return this.epsilonStart[state];
+    }
+
+    //Return the index after the last epsilon-transition from the state
+    public int epsilonEnd(int state) {
+        return this.epsilonStart[state + 1];
+    }
+
+    //Return the to-state of the epsilon-transition at the index
+    public int epsilonTarget(int edge) {
+        return this.epsilonTarget[edge];
+    }
+
+    //Indicate if the state is an initial state
+    public boolean isInitial(int state) {
+        return this.initialStates.get(state);
+    }
+
+    //Indicate if the state is a final state
+    public boolean isFinal(int state) {
+        return this.finalStates.get(state);
+    }
+
+    //Return a new set of the ids of the initial states
+    public BitSet initialStates() {
+        return (BitSet)this.initialStates.clone();
+    }
+
+    //Return a new set of the ids of the final states
+    public BitSet finalStates() {
+        return (BitSet)this.finalStates.clone();
+    }
+
+    //Indicate if any of the states in the set is a final state
+    public boolean anyFinal(BitSet states) {
+        return states.intersects(this.finalStates);
+    }
+
+    //Return an estimate of the bytes used by the arrays and bitmaps.
+    //(The state names are shared with the Fsa it was compiled from, and are not counted)
+    public long footprintBytes() {
+        long bytes = 0;
+        bytes += 16 + 4L * (this.edgeStart.length + this.epsilonStart.length);
+        bytes += 16 + 4L * (this.edgeEvent.length + this.edgeTarget.length + this.epsilonTarget.length);
+        bytes += 16 + 4L * (this.stateNames.length + this.eventNames.length);
+        bytes += 2 * (16 + this.stateNames.length / 8);
+        //Each name index entry costs a HashMap node, table slot and boxed id.
+        bytes += 56L * (this.stateNames.length + this.eventNames.length);
+        return bytes;
+    }
+}
@@ -0,0 +1,117 @@
+import java.awt.*;
+import java.awt.geom.*;
+
+class EdgeGeometry {
+    //The shape of one transition as FsaPanel draws it: a line or curve from the edge of one state's
+    //circle to the edge of the other's, an arrowhead at the end, and the event name beside it.
+    //A transition between two states is a straight line, unless there are others between them
+    //(either way), when each is bent by a different amount so that none overlap.
+    //A transition from a state to itself is a loop over the top of the state, larger for each further loop.
+    //The geometry only depends on the two states' positions and the transition's place among
+    //its siblings, so FsaPanel keeps it until one of those changes.
+    private static final double BEND = 30;
+    private static final double LOOP = 30;
+    private static final double ARROW_LENGTH = 12;
+    private static final double ARROW_WIDTH = 5;
+    //An estimate of the size of the label text, for the bounds.
+    private static final int CHAR_WIDTH = 8;
+    private static final int LABEL_HEIGHT = 16;
+
+    final Shape path;
+    final Shape arrow;
+    final String label;
+    final float labelX;
+    final float labelY;
+    //The bounds of the path, arrowhead and label.
+    final Rectangle bounds;
+
+    private EdgeGeometry(Path2D path, double tipX, double tipY, double dirX, double dirY, String label, double labelX, double labelY) {
+        this.path = path;
+        Path2D head = new Path2D.Double();
+        head.moveTo(tipX, tipY);
+        head.lineTo(tipX - dirX * ARROW_LENGTH - dirY * ARROW_WIDTH, tipY - dirY * ARROW_LENGTH + dirX * ARROW_WIDTH);
+        head.lineTo(tipX - dirX * ARROW_LENGTH + dirY * ARROW_WIDTH, tipY - dirY * ARROW_LENGTH - dirX * ARROW_WIDTH);
+        head.closePath();
+        this.arrow = head;
+        this.label = label;
+        //The label is centred on its point.
+        this.labelX = (float)(labelX - label.length() * CHAR_WIDTH / 2.0);
+        this.labelY = (float)(labelY + LABEL_HEIGHT / 2.0 - 4);
+        Rectangle r = path.getBounds();
+        r.add(head.getBounds());
+        r.add(new Rectangle((int)Math.floor(this.labelX) - 2, (int)Math.floor(this.labelY) - LABEL_HEIGHT + 2, label.length() * CHAR_WIDTH + 4, LABEL_HEIGHT + 2));
+        this.bounds = r;
+    }
+
+    //Return the geometry of the transition, the index'th of count transitions from its fromState
+    //to its toState (in the order FsaPanel sorts them); reverse is true if there are transitions
+    //the other way between the two states.
+    static EdgeGeometry of(Transition t, int index, int count, boolean reverse) {
+        String label = t.eventName() == null || t.eventName().length() == 0 ? "\u03b5" : t.eventName();
+        State from = t.fromState();
+        State to = t.toState();
+        double x0 = from.getXpos() + StateIcon.CENTRE_X;
+        double y0 = from.getYpos() + StateIcon.CENTRE_Y;
+        double r = StateIcon.RADIUS;
+        if (from == to) {
+            //Leave and return through the top of the circle, 30 degrees either side of the top.
+            double h = LOOP * (index + 1);
+            double sx = x0 - r / 2;
+            double ex = x0 + r / 2;
+            double sy = y0 - r * Math.sqrt(3) / 2;
+            Path2D path = new Path2D.Double();
+            path.moveTo(sx, sy);
+            path.curveTo(sx - h, sy - 2 * h, ex + h, sy - 2 * h, ex, sy);
+            double[] dir = unit(ex - (ex + h), sy - (sy - 2 * h));
+            return new EdgeGeometry(path, ex, sy, dir[0], dir[1], label, x0, sy - 1.5 * h - LABEL_HEIGHT / 2.0);
+        }
+
+        double x1 = to.getXpos() + StateIcon.CENTRE_X;
+        double y1 = to.getYpos() + StateIcon.CENTRE_Y;
+        double[] u = unit(x1 - x0, y1 - y0);
+        //n is at right angles to the line, to its left as seen travelling along it.
+        double nx = u[1];
+        double ny = -u[0];
+        double bend = reverse ? BEND * (index + 1) : BEND * (index - (count - 1) / 2.0);
+        if (bend == 0) {
+            //Stop at the edges of the circles, unless they overlap.
+            boolean apart = Math.hypot(x1 - x0, y1 - y0) > 2 * r;
+            double sx = apart ? x0 + u[0] * r : x0;
+            double sy = apart ? y0 + u[1] * r : y0;
+            double ex = apart ? x1 - u[0] * r : x1;
+            double ey = apart ? y1 - u[1] * r : y1;
+            Path2D path = new Path2D.Double();
+            path.moveTo(sx, sy);
+            path.lineTo(ex, ey);
+            return new EdgeGeometry(path, ex, ey, u[0], u[1], label, (sx + ex) / 2 + nx * 10, (sy + ey) / 2 + ny * 10);
+        }
+
+        //A quadratic curve whose middle is bend away from the middle of the line
+        //(its control point is twice as far away).
+        double cx = (x0 + x1) / 2 + nx * bend * 2;
+        double cy = (y0 + y1) / 2 + ny * bend * 2;
+        double[] s = unit(cx - x0, cy - y0);
+        double[] e = unit(cx - x1, cy - y1);
+        double sx = x0 + s[0] * r;
+        double sy = y0 + s[1] * r;
+        double ex = x1 + e[0] * r;
+        double ey = y1 + e[1] * r;
+        Path2D path = new Path2D.Double();
+        path.moveTo(sx, sy);
+        path.quadTo(cx, cy, ex, ey);
+        double[] dir = unit(ex - cx, ey - cy);
+        double side = bend > 0 ? 10 : -10;
+        return new EdgeGeometry(path, ex, ey, dir[0], dir[1], label,
+            0.25 * sx + 0.5 * cx + 0.25 * ex + nx * side, 0.25 * sy + 0.5 * cy + 0.25 * ey + ny * side);
+    }
+
+    //Return the unit vector in the direction (dx,dy), or (1,0) if there is no direction.
+    private static double[] unit(double dx, double dy) {
+        double length = Math.hypot(dx, dy);
+        if (length == 0) {
+            return new double[] {1, 0};
+        }
+
+        return new double[] {dx / length, dy / length};
+    }
+}
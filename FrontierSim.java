@@ -0,0 +1,177 @@
+import java.util.*;
+
+public class FrontierSim implements FsaSim {
+    //Simulates a CompiledFsa as an NFA.
+    //The current states (the frontier) are kept in a BitSet, and each step fills a second BitSet,
+    //then swaps the two, so a step allocates nothing.
+    //The members of each BitSet are also listed in an array, so a step visits only the frontier
+    //rather than every word of the BitSet.
+    //The frontier is always closed under epsilon-transitions: a state added to it is followed by
+    //every state reachable from it by epsilon-transitions that is not already there, so each step
+    //follows each epsilon-transition at most once, and no closures are stored.
+    //A FrontierSim only reads its CompiledFsa, so many of them can share one from different threads.
+    private final CompiledFsa fsa;
+    private final BitSet initialStates;
+    private BitSet current;
+    private BitSet next;
+    private int[] currentList;
+    private int[] nextList;
+    private int currentSize;
+    private int nextSize;
+    //The number of current states that are final states.
+    private int currentFinals;
+
+    public FrontierSim(CompiledFsa fsaIn) {
+        this.fsa = fsaIn;
+        int n = fsaIn.stateCount();
+        this.current = new BitSet(n);
+        this.next = new BitSet(n);
+        //The member lists start small and grow as the frontier does.
+        this.currentList = new int[16];
+        this.nextList = new int[16];
+        this.initialStates = fsaIn.initialStates();
+        this.reset();
+    }
+
+    //Reset the simulation to its initial state(s)
+    public void reset() {
+        this.clearNext();
+        for (int s = this.initialStates.nextSetBit(0); s >= 0; s = this.initialStates.nextSetBit(s + 1)) {
+            this.addClosure(s);
+        }
+
+        this.swap();
+    }
+
+    //Take one step in the simulation
+    //event==null or "" is an epsilon event, which leaves the (already closed) frontier unchanged
+    public void step(String event) {
+        if (event == null || event.length() == 0) {
+            return;
+        }
+
+        this.step(this.fsa.eventId(event));
+    }
+
+    //Take one step in the simulation, for the event with the given id in the CompiledFsa.
+    //An id of -1 (an event with no transitions) empties the frontier.
+    public void step(int event) {
+        this.clearNext();
+        if (event >= 0) {
+            for (int i = 0; i < this.currentSize; i++) {
+                int s = this.currentList[i];
+                int edge = this.fsa.firstEdge(s, event);
+                if (edge < 0) {
+                    continue;
+                }
+
+                int end = this.fsa.edgesEnd(s);
+                while (edge < end && this.fsa.edgeEvent(edge) == event) {
+                    int target = this.fsa.edgeTarget(edge);
+                    //A target already in the frontier came with its closure.
+                    if (!this.next.get(target)) {
+                        this.addClosure(target);
+                    }
+
+                    edge++;
+                }
+            }
+        }
+
+        this.swap();
+    }
+
+    //Returns true if the simulation has recognised
+    //the sequence of events it has been given
+    public boolean isRecognised() {
+        return this.currentFinals > 0;
+    }
+
+    //Indicate if the state with the given id is a current state
+    public boolean isCurrent(int state) {
+        return this.current.get(state);
+    }
+
+    //Return a new set of the ids of the current states
+    public BitSet currentStates() {
+        return (BitSet)this.current.clone();
+    }
+
+    //Return the number of current states
+    public int currentCount() {
+        return this.currentSize;
+    }
+
+    //Return the ids of the current states, in ascending order
+    public int[] currentStateArray() {
+        int[] states = Arrays.copyOf(this.currentList, this.currentSize);
+        Arrays.sort(states);
+        return states;
+    }
+
+    //Make exactly the given states current.
+    //The states must already be closed under epsilon-transitions, as the current states always are.
+    public void setCurrentStates(int[] states) {
+        this.clearNext();
+        for (int i = 0; i < states.length; i++) {
+            this.addNext(states[i]);
+        }
+
+        this.swap();
+    }
+
+    //Add the epsilon-closure of the state to the next frontier.
+    //The states added are also the queue of states whose epsilon-transitions are still to be followed,
+    //and a state already in the next frontier came with its closure, so it is not followed again.
+    private void addClosure(int state) {
+        int i = this.nextSize;
+        this.addNext(state);
+        while (i < this.nextSize) {
+            int s = this.nextList[i++];
+            for (int e = this.fsa.epsilonFrom(s); e < this.fsa.epsilonEnd(s); e++) {
+                this.addNext(this.fsa.epsilonTarget(e));
+            }
+        }
+    }
+
+    //Add the state to the next frontier, if it is not already there.
+    private void addNext(int state) {
+        if (!this.next.get(state)) {
+            this.next.set(state);
+            if (this.nextSize == this.nextList.length) {
+                this.nextList = Arrays.copyOf(this.nextList, this.nextList.length * 2);
+            }
+
+            this.nextList[this.nextSize++] = state;
+        }
+    }
+
+    //Empty the next frontier, clearing only the bits that are set.
+    private void clearNext() {
+        for (int i = 0; i < this.nextSize; i++) {
+            this.next.clear(this.nextList[i]);
+        }
+
+        this.nextSize = 0;
+    }
+
+    //Make the next frontier current, and keep the old one as the next buffer.
+    private void swap() {
+        BitSet states = this.current;
+        this.current = this.next;
+        this.next = states;
+        int[] list = this.currentList;
+        this.currentList = this.nextList;
+        this.nextList = list;
+        int size = this.currentSize;
+        this.currentSize = this.nextSize;
+        this.nextSize = size;
+        //Count the final states of the new frontier.
+        this.currentFinals = 0;
+        for (int i = 0; i < this.currentSize; i++) {
+            if (this.fsa.isFinal(this.currentList[i])) {
+                this.currentFinals++;
+            }
+        }
+    }
+}
@@ -41,6 +41,10 @@ public interface Fsa
     public void removeTransition(Transition t);
 
 
+    //Return a set containing all the transitions in this Fsa
+    public Set<Transition> getTransitions();
+
+
     //Find all the transitions between two states
     //Throws IllegalArgumentException if:
     //  The fromState or toState does not exist
@@ -0,0 +1,415 @@
+import java.io.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.*;
+
+public class FsaBinaryReaderWriter {
+    //Reads and writes FSAs in a compact, versioned binary format, which loads without
+    //parsing text: the arrays of a CompiledFsa are decoded straight from the file.
+    //The format (varints are unsigned LEB128, zigzag-encoded where they may be negative):
+    //  magic "FSAB", version (varint)
+    //  number of states, events, transitions and epsilon-transitions (varints)
+    //  string table: each state name, then each event name, as a varint length and UTF-8 bytes
+    //  coordinates: for each state, x and y as zigzag varint differences from the previous state's
+    //  transitions: for each state, the number of its transitions, then for each transition
+    //    (sorted by event) the difference from the previous event (varint)
+    //    and from the previous to-state, starting with the state itself (zigzag varint)
+    //  epsilon-transitions: for each state, their number, then their to-states as above
+    //  initial and final states: a bitmap each, of (states+7)/8 bytes
+    //  a CRC32 of everything before it (4 bytes, big-endian)
+    //Binary files have no lines, so their errors are reported as an FsaFormatException on line 0.
+    //It reads and writes streams of bytes only, and so is not an FsaIo: bytes carried through
+    //a Reader or Writer are corrupted by whatever charset it decodes or encodes them with.
+    //Every count in the file is checked against the bytes left before anything is allocated for it,
+    //so a corrupt file is reported as an FsaFormatException rather than running out of memory.
+    private static final byte[] MAGIC = {'F', 'S', 'A', 'B'};
+    private static final int VERSION = 1;
+
+    public FsaBinaryReaderWriter() {
+    }
+
+    //Read an FSA written by write from the InputStream, in, and transfer it to Fsa, f.
+    public void read(InputStream in, Fsa f) throws IOException, FsaFormatException {
+        this.build(new Decoder(readAll(in)), f);
+    }
+
+    //Read an FSA written by write from the file, as a CompiledFsa.
+    //This is the fast way to load a large FSA for simulation, as no State or Transition is made.
+    public CompiledFsa readCompiled(File file) throws IOException, FsaFormatException {
+        return new Decoder(Files.readAllBytes(file.toPath())).decode();
+    }
+
+    //Read an FSA written by write from the InputStream, in, as a CompiledFsa.
+    public CompiledFsa readCompiled(InputStream in) throws IOException, FsaFormatException {
+        return new Decoder(readAll(in)).decode();
+    }
+
+    //Return the rest of the InputStream's bytes.
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buf = new byte[65536];
+        int read;
+        while ((read = in.read(buf)) > 0) {
+            bytes.write(buf, 0, read);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    //Write the Fsa, f, to the OutputStream, out.
+    public void write(OutputStream out, Fsa f) throws IOException {
+        CompiledFsa c = new CompiledFsa(f);
+        CRC32 crc = new CRC32();
+        Encoder e = new Encoder(new CheckedOutputStream(out, crc));
+        int n = c.stateCount();
+        e.bytes(MAGIC);
+        e.varint(VERSION);
+        e.varint(n);
+        e.varint(c.eventCount());
+        e.varint(c.edgesFrom(n));
+        e.varint(c.epsilonFrom(n));
+        for (int s = 0; s < n; s++) {
+            e.string(c.stateName(s));
+        }
+
+        for (int event = 0; event < c.eventCount(); event++) {
+            e.string(c.eventName(event));
+        }
+
+        int x = 0;
+        int y = 0;
+        for (int s = 0; s < n; s++) {
+            State state = f.findState(c.stateName(s));
+            e.zigzag(state.getXpos() - x);
+            e.zigzag(state.getYpos() - y);
+            x = state.getXpos();
+            y = state.getYpos();
+        }
+
+        for (int s = 0; s < n; s++) {
+            e.varint(c.edgesEnd(s) - c.edgesFrom(s));
+            int event = 0;
+            int target = s;
+            for (int edge = c.edgesFrom(s); edge < c.edgesEnd(s); edge++) {
+                e.varint(c.edgeEvent(edge) - event);
+                e.zigzag(c.edgeTarget(edge) - target);
+                event = c.edgeEvent(edge);
+                target = c.edgeTarget(edge);
+            }
+        }
+
+        for (int s = 0; s < n; s++) {
+            e.varint(c.epsilonEnd(s) - c.epsilonFrom(s));
+            int target = s;
+            for (int edge = c.epsilonFrom(s); edge < c.epsilonEnd(s); edge++) {
+                e.zigzag(c.epsilonTarget(edge) - target);
+                target = c.epsilonTarget(edge);
+            }
+        }
+
+        e.bytes(Arrays.copyOf(c.initialStates().toByteArray(), (n + 7) / 8));
+        e.bytes(Arrays.copyOf(c.finalStates().toByteArray(), (n + 7) / 8));
+        e.flush();
+        //The checksum itself is written past the CheckedOutputStream.
+        int value = (int)crc.getValue();
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+        out.flush();
+    }
+
+    //Decode the binary FSA, and transfer its states and transitions to Fsa, f.
+    private void build(Decoder d, Fsa f) throws FsaFormatException {
+        CompiledFsa c = d.decode();
+        //f's listeners are told of the whole FSA at once, rather than of each state and transition.
+        FsaImpl.beginBatch(f);
+        try {
+            int n = c.stateCount();
+            State[] states = new State[n];
+            for (int s = 0; s < n; s++) {
+                states[s] = f.newState(c.stateName(s), d.xPos[s], d.yPos[s]);
+            }
+
+            for (int s = 0; s < n; s++) {
+                for (int edge = c.edgesFrom(s); edge < c.edgesEnd(s); edge++) {
+                    f.newTransition(states[s], states[c.edgeTarget(edge)], c.eventName(c.edgeEvent(edge)));
+                }
+
+                for (int edge = c.epsilonFrom(s); edge < c.epsilonEnd(s); edge++) {
+                    f.newTransition(states[s], states[c.epsilonTarget(edge)], null);
+                }
+            }
+
+            for (int s = 0; s < n; s++) {
+                if (c.isInitial(s)) {
+                    states[s].setInitial(true);
+                }
+
+                if (c.isFinal(s)) {
+                    states[s].setFinal(true);
+                }
+            }
+        }
+
+        catch (IllegalArgumentException e) {
+            throw new FsaFormatException(0, "Illegal format");
+        }
+
+        finally {
+            FsaImpl.commitBatch(f);
+        }
+    }
+
+    //Writes varints, strings and bytes to a buffer, and the buffer to a stream when it fills.
+    private static class Encoder {
+        private final OutputStream out;
+        private final byte[] buf;
+        private int size;
+
+        private Encoder(OutputStream outIn) {
+            this.out = outIn;
+            this.buf = new byte[65536];
+            this.size = 0;
+        }
+
+        private void varint(int value) throws IOException {
+            if (this.size + 5 > this.buf.length) {
+                this.flush();
+            }
+
+            while ((value & ~0x7F) != 0) {
+                this.buf[this.size++] = (byte)((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+
+            this.buf[this.size++] = (byte)value;
+        }
+
+        //Write a value that may be negative, so that small negative values stay short.
+        private void zigzag(int value) throws IOException {
+            this.varint((value << 1) ^ (value >> 31));
+        }
+
+        private void string(String value) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            this.varint(bytes.length);
+            this.bytes(bytes);
+        }
+
+        private void bytes(byte[] bytes) throws IOException {
+            if (this.size + bytes.length > this.buf.length) {
+                this.flush();
+            }
+
+            if (bytes.length > this.buf.length) {
+                this.out.write(bytes);
+                return;
+            }
+
+            System.arraycopy(bytes, 0, this.buf, this.size, bytes.length);
+            this.size += bytes.length;
+        }
+
+        private void flush() throws IOException {
+            this.out.write(this.buf, 0, this.size);
+            this.size = 0;
+        }
+    }
+
+    //Reads a whole binary FSA from a byte array, checking it as it goes.
+    //The coordinates of the states, which a CompiledFsa does not hold, are kept in xPos and yPos.
+    private static class Decoder {
+        private final byte[] buf;
+        private final int limit;
+        private int pos;
+        private int[] xPos;
+        private int[] yPos;
+
+        private Decoder(byte[] bufIn) {
+            this.buf = bufIn;
+            this.limit = bufIn.length - 4;
+            this.pos = 0;
+        }
+
+        private CompiledFsa decode() throws FsaFormatException {
+            if (this.limit < MAGIC.length) {
+                throw new FsaFormatException(0, "Not a binary FSA");
+            }
+
+            for (int i = 0; i < MAGIC.length; i++) {
+                if (this.buf[i] != MAGIC[i]) {
+                    throw new FsaFormatException(0, "Not a binary FSA");
+                }
+            }
+
+            CRC32 crc = new CRC32();
+            crc.update(this.buf, 0, this.limit);
+            int stored = ((this.buf[this.limit] & 0xFF) << 24) | ((this.buf[this.limit + 1] & 0xFF) << 16)
+                | ((this.buf[this.limit + 2] & 0xFF) << 8) | (this.buf[this.limit + 3] & 0xFF);
+            if ((int)crc.getValue() != stored) {
+                throw new FsaFormatException(0, "Checksum mismatch");
+            }
+
+            this.pos = MAGIC.length;
+            if (this.varint() != VERSION) {
+                throw new FsaFormatException(0, "Unsupported version");
+            }
+
+            int n = this.bounded();
+            int eventCount = this.bounded();
+            int edgeCount = this.bounded();
+            int epsilonCount = this.bounded();
+            String[] stateNames = new String[n];
+            for (int s = 0; s < n; s++) {
+                stateNames[s] = this.string();
+            }
+
+            String[] eventNames = new String[eventCount];
+            for (int e = 0; e < eventCount; e++) {
+                eventNames[e] = this.string();
+            }
+
+            this.xPos = new int[n];
+            this.yPos = new int[n];
+            int x = 0;
+            int y = 0;
+            for (int s = 0; s < n; s++) {
+                x += this.zigzag();
+                y += this.zigzag();
+                this.xPos[s] = x;
+                this.yPos[s] = y;
+            }
+
+            int[] edgeStart = new int[n + 1];
+            int[] edgeEvent = new int[edgeCount];
+            int[] edgeTarget = new int[edgeCount];
+            int edge = 0;
+            for (int s = 0; s < n; s++) {
+                int end = edge + this.count();
+                if (end > edgeCount || end < edge) {
+                    throw new FsaFormatException(0, "Illegal format");
+                }
+
+                int event = 0;
+                int target = s;
+                for (; edge < end; edge++) {
+                    //A row is sorted by event, so an event is never less than the one before
+                    //(and a sum too large to hold comes out negative).
+                    event += this.count();
+                    target += this.zigzag();
+                    if (event < 0 || event >= eventCount || target < 0 || target >= n) {
+                        throw new FsaFormatException(0, "Illegal format");
+                    }
+
+                    edgeEvent[edge] = event;
+                    edgeTarget[edge] = target;
+                }
+
+                edgeStart[s + 1] = edge;
+            }
+
+            int[] epsilonStart = new int[n + 1];
+            int[] epsilonTarget = new int[epsilonCount];
+            edge = 0;
+            for (int s = 0; s < n; s++) {
+                int end = edge + this.count();
+                if (end > epsilonCount || end < edge) {
+                    throw new FsaFormatException(0, "Illegal format");
+                }
+
+                int target = s;
+                for (; edge < end; edge++) {
+                    target += this.zigzag();
+                    if (target < 0 || target >= n) {
+                        throw new FsaFormatException(0, "Illegal format");
+                    }
+
+                    epsilonTarget[edge] = target;
+                }
+
+                epsilonStart[s + 1] = edge;
+            }
+
+            if (edgeStart[n] != edgeCount || epsilonStart[n] != epsilonCount) {
+                throw new FsaFormatException(0, "Illegal format");
+            }
+
+            BitSet initial = this.bitmap(n);
+            BitSet finals = this.bitmap(n);
+            if (this.pos != this.limit) {
+                throw new FsaFormatException(0, "Illegal format");
+            }
+
+            return new CompiledFsa(stateNames, eventNames, edgeStart, edgeEvent, edgeTarget,
+                epsilonStart, epsilonTarget, initial, finals);
+        }
+
+        private int varint() throws FsaFormatException {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                if (this.pos >= this.limit) {
+                    throw new FsaFormatException(0, "Unexpected end of file");
+                }
+
+                byte b = this.buf[this.pos++];
+                value |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+
+            throw new FsaFormatException(0, "Illegal format");
+        }
+
+        private int zigzag() throws FsaFormatException {
+            int value = this.varint();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        //Read a count or length, which must not be negative.
+        private int count() throws FsaFormatException {
+            int value = this.varint();
+            if (value < 0) {
+                throw new FsaFormatException(0, "Illegal format");
+            }
+
+            return value;
+        }
+
+        //Read the number of things that follow, each taking at least one byte,
+        //so that there cannot be more of them than there are bytes left.
+        private int bounded() throws FsaFormatException {
+            int value = this.count();
+            if (value > this.limit - this.pos) {
+                throw new FsaFormatException(0, "Unexpected end of file");
+            }
+
+            return value;
+        }
+
+        private String string() throws FsaFormatException {
+            int length = this.bounded();
+
+            String value = new String(this.buf, this.pos, length, StandardCharsets.UTF_8);
+            this.pos += length;
+            return value;
+        }
+
+        private BitSet bitmap(int n) throws FsaFormatException {
+            int length = (n + 7) / 8;
+            if (length > this.limit - this.pos) {
+                throw new FsaFormatException(0, "Unexpected end of file");
+            }
+
+            BitSet bits = BitSet.valueOf(Arrays.copyOfRange(this.buf, this.pos, this.pos + length));
+            this.pos += length;
+            if (bits.length() > n) {
+                throw new FsaFormatException(0, "Illegal format");
+            }
+
+            return bits;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+import java.util.*;
+
+public class FsaChange {
+    //The changes made to an FSA over a burst of edits, as delivered by an FsaEventBus.
+    //Changes that cancel out within the burst are left out: a state or transition both added and
+    //removed is in neither set, and a state added in the burst is only in getAddedStates,
+    //however it has been moved or marked since.
+    //A change is built up by its bus, and is not changed once it has been delivered.
+    private final Set<State> addedStates;
+    private final Set<State> removedStates;
+    //movedStates maps each moved state to its total move, {dx, dy}, over the burst.
+    private final Map<State, int[]> movedStates;
+    //markedStates holds the states set/cleared as initial or final states.
+    private final Set<State> markedStates;
+    private final Set<Transition> addedTransitions;
+    private final Set<Transition> removedTransitions;
+
+    FsaChange() {
+        this.addedStates = new LinkedHashSet<State>();
+        this.removedStates = new LinkedHashSet<State>();
+        this.movedStates = new LinkedHashMap<State, int[]>();
+        this.markedStates = new LinkedHashSet<State>();
+        this.addedTransitions = new LinkedHashSet<Transition>();
+        this.removedTransitions = new LinkedHashSet<Transition>();
+    }
+
+    //Indicate if there are no changes
+    public boolean isEmpty() {
+        return this.addedStates.isEmpty() && this.removedStates.isEmpty() && this.movedStates.isEmpty()
+            && this.markedStates.isEmpty() && this.addedTransitions.isEmpty() && this.removedTransitions.isEmpty();
+    }
+
+    //Return the states added, in the order they were added
+    public Set<State> getAddedStates() {
+        return Collections.unmodifiableSet(this.addedStates);
+    }
+
+    //Return the states removed, in the order they were removed
+    public Set<State> getRemovedStates() {
+        return Collections.unmodifiableSet(this.removedStates);
+    }
+
+    //Return the states moved (and not added or removed)
+    public Set<State> getMovedStates() {
+        return Collections.unmodifiableSet(this.movedStates.keySet());
+    }
+
+    //Return the total X distance a moved state was moved by, or 0 if it was not moved
+    public int getDx(State s) {
+        int[] move = this.movedStates.get(s);
+        return move == null ? 0 : move[0];
+    }
+
+    //Return the total Y distance a moved state was moved by, or 0 if it was not moved
+    public int getDy(State s) {
+        int[] move = this.movedStates.get(s);
+        return move == null ? 0 : move[1];
+    }
+
+    //Return the states set/cleared as initial or final states (and not added or removed)
+    public Set<State> getMarkedStates() {
+        return Collections.unmodifiableSet(this.markedStates);
+    }
+
+    //Return the transitions added, in the order they were added
+    public Set<Transition> getAddedTransitions() {
+        return Collections.unmodifiableSet(this.addedTransitions);
+    }
+
+    //Return the transitions removed, in the order they were removed
+    public Set<Transition> getRemovedTransitions() {
+        return Collections.unmodifiableSet(this.removedTransitions);
+    }
+
+    public String toString() {
+        return "+" + this.addedStates.size() + " -" + this.removedStates.size() + " states, "
+            + this.movedStates.size() + " moved, " + this.markedStates.size() + " marked, "
+            + "+" + this.addedTransitions.size() + " -" + this.removedTransitions.size() + " transitions";
+    }
+
+    //The methods below are called by the bus as the edits are made.
+    //A removed state or transition is never added again (a new one is made instead),
+    //so each is added at most once and removed at most once.
+
+    void stateAdded(State s) {
+        this.addedStates.add(s);
+    }
+
+    void stateRemoved(State s) {
+        this.movedStates.remove(s);
+        this.markedStates.remove(s);
+        if (!this.addedStates.remove(s)) {
+            this.removedStates.add(s);
+        }
+    }
+
+    void stateMoved(State s, int dx, int dy) {
+        if (this.addedStates.contains(s)) {
+            return;
+        }
+
+        int[] move = this.movedStates.get(s);
+        if (move == null) {
+            this.movedStates.put(s, new int[] {dx, dy});
+        }
+
+        else {
+            move[0] += dx;
+            move[1] += dy;
+        }
+    }
+
+    void stateMarked(State s) {
+        if (!this.addedStates.contains(s)) {
+            this.markedStates.add(s);
+        }
+    }
+
+    void transitionAdded(Transition t) {
+        this.addedTransitions.add(t);
+    }
+
+    void transitionRemoved(Transition t) {
+        if (!this.addedTransitions.remove(t)) {
+            this.removedTransitions.add(t);
+        }
+    }
+}
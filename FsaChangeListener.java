@@ -0,0 +1,6 @@
+public interface FsaChangeListener
+{
+    //Called with the changes made to an FSA since the listener was last called
+    //(on the executor of the FsaEventBus the listener was added to)
+    public void fsaChanged(FsaChange change);
+}
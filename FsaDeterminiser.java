@@ -0,0 +1,313 @@
+import java.util.*;
+
+public class FsaDeterminiser {
+    //Builds deterministic equivalents of finite-state automata.
+    //determinise makes a DFA with the subset construction (following epsilon-transitions),
+    //and minimise then reduces it to the smallest DFA with Hopcroft's partition refinement.
+    //Both return a new FsaImpl, which can be saved through FsaReaderWriter.
+    //The new states are named q0, q1, ... (q0 is the initial state) and laid out in a grid.
+    //There is no dead state: an event with no transition from a state is simply rejected.
+
+    //Return a new deterministic FSA that recognises the same event sequences as f.
+    public static FsaImpl determinise(Fsa f) {
+        return toFsa(subsetConstruction(f));
+    }
+
+    //Return a new deterministic FSA, with as few states as possible,
+    //that recognises the same event sequences as f.
+    public static FsaImpl minimise(Fsa f) {
+        return toFsa(hopcroft(subsetConstruction(f)));
+    }
+
+    //A DFA in arrays: delta[s*eventCount+e] is the state that event e leads to from state s, or -1.
+    //State 0 is the initial state.
+    private static class Dfa {
+        private String[] events;
+        private int stateCount;
+        private int[] delta;
+        private boolean[] accepting;
+    }
+
+    //Build the DFA of the reachable frontiers of f.
+    private static Dfa subsetConstruction(Fsa f) {
+        CompiledFsa nfa = new CompiledFsa(f);
+        FrontierSim sim = new FrontierSim(nfa);
+        int eventCount = nfa.eventCount();
+        Dfa dfa = new Dfa();
+        dfa.events = new String[eventCount];
+        for (int e = 0; e < eventCount; e++) {
+            dfa.events[e] = nfa.eventName(e);
+        }
+
+        //Number each new frontier in the order it is found, and work through them in that order.
+        Map<Frontier, Integer> ids = new HashMap<Frontier, Integer>();
+        List<int[]> frontiers = new ArrayList<int[]>();
+        int[] delta = new int[16 * Math.max(1, eventCount)];
+        int[] start = sim.currentStateArray();
+        if (start.length > 0) {
+            ids.put(new Frontier(start), 0);
+            frontiers.add(start);
+        }
+
+        for (int s = 0; s < frontiers.size(); s++) {
+            if ((s + 1) * eventCount > delta.length) {
+                delta = Arrays.copyOf(delta, delta.length * 2);
+            }
+
+            for (int e = 0; e < eventCount; e++) {
+                sim.setCurrentStates(frontiers.get(s));
+                sim.step(e);
+                int[] next = sim.currentStateArray();
+                if (next.length == 0) {
+                    delta[s * eventCount + e] = -1;
+                    continue;
+                }
+
+                Frontier key = new Frontier(next);
+                Integer id = ids.get(key);
+                if (id == null) {
+                    id = frontiers.size();
+                    ids.put(key, id);
+                    frontiers.add(next);
+                }
+
+                delta[s * eventCount + e] = id;
+            }
+        }
+
+        dfa.stateCount = frontiers.size();
+        dfa.delta = Arrays.copyOf(delta, dfa.stateCount * eventCount);
+        dfa.accepting = new boolean[dfa.stateCount];
+        for (int s = 0; s < dfa.stateCount; s++) {
+            int[] members = frontiers.get(s);
+            for (int i = 0; i < members.length; i++) {
+                if (nfa.isFinal(members[i])) {
+                    dfa.accepting[s] = true;
+                }
+            }
+        }
+
+        return dfa;
+    }
+
+    //Merge the equivalent states of a DFA, with Hopcroft's O(n log n) partition refinement.
+    private static Dfa hopcroft(Dfa dfa) {
+        int k = dfa.events.length;
+        //Complete the DFA with a dead state, numbered n, that every missing transition goes to.
+        int n = dfa.stateCount;
+        int size = n + 1;
+        int[] delta = new int[size * k];
+        for (int s = 0; s < size; s++) {
+            for (int e = 0; e < k; e++) {
+                int target = s < n ? dfa.delta[s * k + e] : -1;
+                delta[s * k + e] = target < 0 ? n : target;
+            }
+        }
+
+        //The predecessors of t under event e are pred[predStart[e*size+t]] to pred[predStart[e*size+t+1]-1].
+        int[] predStart = new int[size * k + 1];
+        int[] pred = new int[size * k];
+        for (int s = 0; s < size; s++) {
+            for (int e = 0; e < k; e++) {
+                predStart[e * size + delta[s * k + e] + 1]++;
+            }
+        }
+
+        for (int i = 0; i < size * k; i++) {
+            predStart[i + 1] += predStart[i];
+        }
+
+        int[] fill = Arrays.copyOf(predStart, size * k);
+        for (int s = 0; s < size; s++) {
+            for (int e = 0; e < k; e++) {
+                pred[fill[e * size + delta[s * k + e]]++] = s;
+            }
+        }
+
+        //The partition: the members of block b are elems[first[b]] to elems[end[b]-1],
+        //and loc[s] is the position of s in elems.
+        //While splitting, the marked members of a block are moved to elems[first[b]] to elems[mid[b]-1].
+        int[] elems = new int[size];
+        int[] loc = new int[size];
+        int[] blockOf = new int[size];
+        int[] first = new int[size];
+        int[] end = new int[size];
+        int[] mid = new int[size];
+        boolean[] waiting = new boolean[size];
+        int blocks = 0;
+
+        //Start with the accepting states in one block and the rest in another.
+        int pos = 0;
+        for (int pass = 0; pass < 2; pass++) {
+            int blockStart = pos;
+            for (int s = 0; s < size; s++) {
+                boolean accepting = s < n && dfa.accepting[s];
+                if (accepting == (pass == 0)) {
+                    elems[pos] = s;
+                    loc[s] = pos;
+                    blockOf[s] = blocks;
+                    pos++;
+                }
+            }
+
+            if (pos > blockStart) {
+                first[blocks] = blockStart;
+                end[blocks] = pos;
+                mid[blocks] = blockStart;
+                blocks++;
+            }
+        }
+
+        //Only the smaller of the first two blocks needs to be a splitter.
+        int[] worklist = new int[size];
+        int worklistSize = 0;
+        if (blocks == 2) {
+            int smaller = end[0] - first[0] <= end[1] - first[1] ? 0 : 1;
+            worklist[worklistSize++] = smaller;
+            waiting[smaller] = true;
+        }
+
+        int[] splitter = new int[size];
+        int[] touched = new int[size];
+        while (worklistSize > 0) {
+            int b = worklist[--worklistSize];
+            waiting[b] = false;
+            //Copy the splitter's members, as the block may itself be split below.
+            int splitterSize = end[b] - first[b];
+            System.arraycopy(elems, first[b], splitter, 0, splitterSize);
+            for (int e = 0; e < k; e++) {
+                //Mark every state that event e takes into the splitter.
+                int touchedSize = 0;
+                for (int i = 0; i < splitterSize; i++) {
+                    int t = splitter[i];
+                    for (int p = predStart[e * size + t]; p < predStart[e * size + t + 1]; p++) {
+                        int s = pred[p];
+                        int x = blockOf[s];
+                        if (loc[s] < mid[x]) {
+                            continue;
+                        }
+
+                        if (mid[x] == first[x]) {
+                            touched[touchedSize++] = x;
+                        }
+
+                        //Swap s into the marked part of its block.
+                        int other = elems[mid[x]];
+                        elems[loc[s]] = other;
+                        loc[other] = loc[s];
+                        elems[mid[x]] = s;
+                        loc[s] = mid[x];
+                        mid[x]++;
+                    }
+                }
+
+                //Split each block that is only partly marked.
+                for (int i = 0; i < touchedSize; i++) {
+                    int x = touched[i];
+                    if (mid[x] == end[x]) {
+                        mid[x] = first[x];
+                        continue;
+                    }
+
+                    //The marked part becomes the new block y.
+                    int y = blocks++;
+                    first[y] = first[x];
+                    end[y] = mid[x];
+                    mid[y] = first[y];
+                    first[x] = mid[x];
+                    for (int j = first[y]; j < end[y]; j++) {
+                        blockOf[elems[j]] = y;
+                    }
+
+                    if (waiting[x]) {
+                        worklist[worklistSize++] = y;
+                        waiting[y] = true;
+                    }
+
+                    else {
+                        int smaller = end[y] - first[y] <= end[x] - first[x] ? y : x;
+                        worklist[worklistSize++] = smaller;
+                        waiting[smaller] = true;
+                    }
+                }
+            }
+        }
+
+        //Number the blocks in the order their first states appear, leaving out the dead state's block.
+        int deadBlock = blockOf[n];
+        int[] newId = new int[blocks];
+        Arrays.fill(newId, -1);
+        int[] representative = new int[size];
+        int count = 0;
+        for (int s = 0; s < n; s++) {
+            int b = blockOf[s];
+            if (b != deadBlock && newId[b] < 0) {
+                newId[b] = count;
+                representative[count] = s;
+                count++;
+            }
+        }
+
+        Dfa minimal = new Dfa();
+        minimal.events = dfa.events;
+        minimal.stateCount = count;
+        minimal.delta = new int[count * k];
+        minimal.accepting = new boolean[count];
+        for (int s = 0; s < count; s++) {
+            int r = representative[s];
+            minimal.accepting[s] = dfa.accepting[r];
+            for (int e = 0; e < k; e++) {
+                int target = blockOf[delta[r * k + e]];
+                minimal.delta[s * k + e] = target == deadBlock ? -1 : newId[target];
+            }
+        }
+
+        return minimal;
+    }
+
+    //Build an FsaImpl from a DFA.
+    private static FsaImpl toFsa(Dfa dfa) {
+        FsaImpl fsa = new FsaImpl();
+        int k = dfa.events.length;
+        State[] states = new State[dfa.stateCount];
+        for (int s = 0; s < dfa.stateCount; s++) {
+            //Lay the states out in rows of ten, spaced by the size of a state icon.
+            states[s] = fsa.newState("q" + s, (s % 10) * 150, (s / 10) * 200);
+            states[s].setFinal(dfa.accepting[s]);
+        }
+
+        for (int s = 0; s < dfa.stateCount; s++) {
+            for (int e = 0; e < k; e++) {
+                int target = dfa.delta[s * k + e];
+                if (target >= 0) {
+                    fsa.newTransition(states[s], states[target], dfa.events[e]);
+                }
+            }
+        }
+
+        if (dfa.stateCount > 0) {
+            states[0].setInitial(true);
+        }
+
+        return fsa;
+    }
+
+    //A sorted frontier of NFA state ids, as a hash key.
+    private static class Frontier {
+        private final int[] states;
+        private final int hash;
+
+        private Frontier(int[] statesIn) {
+            this.states = statesIn;
+            this.hash = Arrays.hashCode(statesIn);
+        }
+
+        public int hashCode() {
+            return this.hash;
+        }
+
+        public boolean equals(Object o) {
+            return o instanceof Frontier && Arrays.equals(this.states, ((Frontier)o).states);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+public interface FsaEditListener
+{
+    //Called after a state has been added to the FSA
+    public void stateAdded(State s);
+
+    //Called after a state has been removed from the FSA
+    //(its transitions are removed, and reported, first)
+    public void stateRemoved(State s);
+
+    //Called after a transition has been added to the FSA
+    public void transitionAdded(Transition t);
+
+    //Called after a transition has been removed from the FSA
+    public void transitionRemoved(Transition t);
+
+    //Called whenever a state of the FSA has been moved by (dx,dy)
+    public void stateMoved(State s, int dx, int dy);
+
+    //Called whenever a state of the FSA has been set/cleared as an initial state
+    public void initialChanged(State s, boolean b);
+
+    //Called whenever a state of the FSA has been set/cleared as a final state
+    public void finalChanged(State s, boolean b);
+}
@@ -10,14 +10,18 @@ import java.beans.*;
 public class FsaEditor extends JFrame {
 	static boolean RIGHT_TO_LEFT = false;
 	final private JFileChooser fc;
-	private FsaReaderWriter readWrite;
 	private FsaImpl fsa;
+	//journal saves the edits to the file last opened or saved, or is null if there is none.
+	private FsaJournal journal;
 	private FsaPanel panel;
+	//events delivers the changes made to the FSA to the panel, on the event dispatch thread.
+	private FsaEventBus events;
 
 	public FsaEditor() {
-		this.readWrite = new FsaReaderWriter();
 		this.fsa = new FsaImpl();
 		this.panel = new FsaPanel(this.fsa);
+		this.events = new FsaEventBus(EventQueue::invokeLater);
+		this.events.addListener(this.panel);
 		this.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 		Container pane = this.getContentPane();
 		pane.setLayout(new GridBagLayout());
@@ -43,9 +47,18 @@ public class FsaEditor extends JFrame {
 			public void actionPerformed(ActionEvent e) {
 				if (fc.showOpenDialog(FsaEditor.this) == JFileChooser.APPROVE_OPTION) {
 					fsa = new FsaImpl();
-					fsa.addListener(panel);
-					try (BufferedReader r = new BufferedReader(new FileReader(fc.getSelectedFile()))) {
-						readWrite.read(r, fsa);
+					panel.updateFsa(fsa);
+					events.attach(fsa);
+					if (journal != null) {
+						journal.detach();
+						journal = null;
+					}
+
+					try {
+						//Read the file, and any edits saved to its journal since.
+						FsaJournal opened = new FsaJournal(fc.getSelectedFile());
+						opened.load(fsa);
+						journal = opened;
 					}
 					
 					catch (FileNotFoundException fnf) {
@@ -93,14 +106,53 @@ public class FsaEditor extends JFrame {
 			}
 		} );
 
-		JMenuItem saveAs = new JMenuItem("Save as...");
-		saveAs.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_S, InputEvent.CTRL_MASK));
+		final JMenuItem saveAs = new JMenuItem("Save as...");
+		JMenuItem save = new JMenuItem("Save");
+		save.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_S, InputEvent.CTRL_DOWN_MASK));
+		file.add(save);
+		save.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				//Until there is a file to save to, Save is Save as.
+				if (journal == null) {
+					saveAs.doClick();
+					return;
+				}
+
+				//Only the edits since the last save are written, to the file's journal.
+				try {
+					journal.save();
+				}
+
+				catch (IOException ex) {
+					JOptionPane optionPane = new JOptionPane("IO", JOptionPane.ERROR_MESSAGE);
+					final JDialog error = new JDialog(FsaEditor.this, "Input/Output Exception", true);
+					error.setContentPane(optionPane);
+					optionPane.addPropertyChangeListener(new PropertyChangeListener() {
+						public void propertyChange(PropertyChangeEvent e) {
+							error.setVisible(false);
+						}
+					} );
+
+					error.pack();
+					error.setVisible(true);
+				}
+			}
+		} );
+
+		saveAs.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_S, InputEvent.CTRL_DOWN_MASK | InputEvent.SHIFT_DOWN_MASK));
 		file.add(saveAs);
 		saveAs.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
 				if (fc.showSaveDialog(FsaEditor.this) == JFileChooser.APPROVE_OPTION) {
-					try (Writer w = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(fc.getSelectedFile())))) {
-						readWrite.write(w, fsa);
+					//Write the whole FSA to the new file, and save later edits to its journal.
+					if (journal != null) {
+						journal.detach();
+					}
+
+					journal = new FsaJournal(fc.getSelectedFile());
+					journal.attach(fsa);
+					try {
+						journal.compact();
 					}
 
 					catch (FileNotFoundException fnf) {
@@ -167,12 +219,9 @@ public class FsaEditor extends JFrame {
 		edit.add(setInitial);
 		setInitial.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
-				Iterator it = panel.getIcons().iterator();
+				Iterator it = panel.getSelectedStates().iterator();
 				while (it.hasNext()) {
-					StateIcon icon = (StateIcon)it.next();
-					if (icon.checkSelected()) {
-						icon.setInitial(true);
-					}
+					((State)it.next()).setInitial(true);
 				}
 			}
 		} );
@@ -181,12 +230,9 @@ public class FsaEditor extends JFrame {
 		edit.add(unsetInitial);
 		unsetInitial.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
-				Iterator it = panel.getIcons().iterator();
+				Iterator it = panel.getSelectedStates().iterator();
 				while (it.hasNext()) {
-					StateIcon icon = (StateIcon)it.next();
-					if (icon.checkSelected()) {
-						icon.setInitial(false);
-					}
+					((State)it.next()).setInitial(false);
 				}
 			}
 		} );
@@ -195,12 +241,9 @@ public class FsaEditor extends JFrame {
 		edit.add(setFinal);
 		setFinal.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
-				Iterator it = panel.getIcons().iterator();
+				Iterator it = panel.getSelectedStates().iterator();
 				while (it.hasNext()) {
-					StateIcon icon = (StateIcon)it.next();
-					if (icon.checkSelected()) {
-						icon.setFinal(true);
-					}
+					((State)it.next()).setFinal(true);
 				}
 			}
 		} );
@@ -209,22 +252,31 @@ public class FsaEditor extends JFrame {
 		edit.add(unsetFinal);
 		unsetFinal.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
-				Iterator it = panel.getIcons().iterator();
+				Iterator it = panel.getSelectedStates().iterator();
 				while (it.hasNext()) {
-					StateIcon icon = (StateIcon)it.next();
-					if (icon.checkSelected()) {
-						icon.setFinal(false);
-					}
+					((State)it.next()).setFinal(false);
 				}
 			}
 		} );
 
 		edit.add(new JMenuItem("Delete"));
 		menubar.add(edit);
+
+		JMenu view = new JMenu("View");
+		//A large FSA is drawn much faster on one canvas than with a component for each state.
+		final JCheckBoxMenuItem canvas = new JCheckBoxMenuItem("Draw on one canvas");
+		view.add(canvas);
+		canvas.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				panel.setCanvas(canvas.isSelected());
+			}
+		} );
+
+		menubar.add(view);
 		setJMenuBar(menubar);
 
 		pane.add(this.panel);
-		this.fsa.addListener(this.panel);
+		this.events.attach(this.fsa);
 
 		//Draw the GUI
 		this.pack();
@@ -0,0 +1,189 @@
+import java.util.*;
+import java.util.concurrent.*;
+
+public class FsaEventBus implements FsaEditListener {
+    //Delivers the changes made to an FSA to FsaChangeListeners, on an executor of the caller's choosing:
+    //EventQueue::invokeLater for Swing components, a thread of their own for other listeners,
+    //or Runnable::run to deliver them on the editing thread before the edit returns.
+    //An edit only adds to the pending FsaChange (and hands one task to the executor,
+    //if none is waiting), so editing costs the same however many listeners there are, and however slow.
+    //The edits made before the task runs are delivered as one FsaChange, so a burst of edits
+    //(such as reading a file, or dragging a state) is coalesced into a few changes.
+    //Changes are delivered in order, one at a time, even on an executor with many threads.
+    //The bus is an edit listener of the FSA it is attached to, so is attached and detached
+    //on the thread that edits the FSA; only the delivery runs elsewhere.
+    private final Executor executor;
+    private final List<FsaChangeListener> listeners;
+    private FsaImpl fsa;
+    //pending holds the changes not yet handed to a delivery task, or is null if there are none.
+    private FsaChange pending;
+    //scheduled is true from handing a delivery task to the executor until it has delivered everything.
+    private boolean scheduled;
+    private final Runnable deliver;
+
+    public FsaEventBus(Executor executorIn) {
+        this.executor = executorIn;
+        this.listeners = new CopyOnWriteArrayList<FsaChangeListener>();
+        this.deliver = new Runnable() {
+            public void run() {
+                FsaEventBus.this.deliver();
+            }
+        };
+    }
+
+    //Start delivering the changes made to f.
+    public void attach(FsaImpl f) {
+        this.detach();
+        synchronized (this) {
+            this.fsa = f;
+        }
+
+        f.addEditListener(this);
+    }
+
+    //Stop delivering changes. Changes already made are still delivered.
+    public void detach() {
+        FsaImpl f;
+        synchronized (this) {
+            f = this.fsa;
+            this.fsa = null;
+        }
+
+        if (f != null) {
+            f.removeEditListener(this);
+        }
+    }
+
+    //Add a listener to be given the changes made from now on
+    public void addListener(FsaChangeListener cl) {
+        this.listeners.add(cl);
+    }
+
+    //Remove a listener
+    public void removeListener(FsaChangeListener cl) {
+        this.listeners.remove(cl);
+    }
+
+    //Return the pending change, to add an edit to.
+    private FsaChange pending() {
+        if (this.pending == null) {
+            this.pending = new FsaChange();
+        }
+
+        return this.pending;
+    }
+
+    //Hand a delivery task to the executor, if there are pending changes and no task is waiting.
+    //The executor is called without holding the bus's lock, as it may run the task at once.
+    private void schedule() {
+        synchronized (this) {
+            if (this.scheduled || this.pending == null) {
+                return;
+            }
+
+            this.scheduled = true;
+        }
+
+        try {
+            this.executor.execute(this.deliver);
+        }
+
+        catch (RuntimeException e) {
+            //The executor refused the task (it may have been shut down).
+            synchronized (this) {
+                this.scheduled = false;
+            }
+
+            throw e;
+        }
+    }
+
+    //Deliver the pending changes, until none are left.
+    //Edits made while a change is being delivered are delivered next, by the same task.
+    private void deliver() {
+        while (true) {
+            FsaChange change;
+            synchronized (this) {
+                change = this.pending;
+                this.pending = null;
+                if (change == null || change.isEmpty()) {
+                    this.scheduled = false;
+                    return;
+                }
+            }
+
+            try {
+                Iterator it = this.listeners.iterator();
+                while (it.hasNext()) {
+                    ((FsaChangeListener)it.next()).fsaChanged(change);
+                }
+            }
+
+            catch (RuntimeException e) {
+                //Let the executor see the exception, but keep delivering later changes.
+                synchronized (this) {
+                    this.scheduled = false;
+                }
+
+                this.schedule();
+                throw e;
+            }
+        }
+    }
+
+    public void stateAdded(State s) {
+        synchronized (this) {
+            this.pending().stateAdded(s);
+        }
+
+        this.schedule();
+    }
+
+    public void stateRemoved(State s) {
+        synchronized (this) {
+            this.pending().stateRemoved(s);
+        }
+
+        this.schedule();
+    }
+
+    public void transitionAdded(Transition t) {
+        synchronized (this) {
+            this.pending().transitionAdded(t);
+        }
+
+        this.schedule();
+    }
+
+    public void transitionRemoved(Transition t) {
+        synchronized (this) {
+            this.pending().transitionRemoved(t);
+        }
+
+        this.schedule();
+    }
+
+    public void stateMoved(State s, int dx, int dy) {
+        synchronized (this) {
+            this.pending().stateMoved(s, dx, dy);
+        }
+
+        this.schedule();
+    }
+
+    public void initialChanged(State s, boolean b) {
+        synchronized (this) {
+            this.pending().stateMarked(s);
+        }
+
+        this.schedule();
+    }
+
+    public void finalChanged(State s, boolean b) {
+        synchronized (this) {
+            this.pending().stateMarked(s);
+        }
+
+        this.schedule();
+    }
+}
@@ -7,7 +7,12 @@ public class FsaFormatException extends Exception
 	super(msg);
 	this.lineNr= lineNr;
     }
-    
+
+    //Return the number of the line where the error was detected
+    public int getLineNr()
+    {
+	return lineNr;
+    }
     
     public String toString()
     {
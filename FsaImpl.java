@@ -1,18 +1,56 @@
+import java.io.*;
 import java.util.*;
 
 public class FsaImpl implements Fsa, FsaSim {
 	private Set<State> states;
     private Set<FsaListener> fsaListeners;
-    private Set<String> inputEvents;
+    //editListeners are told of each edit, in the order they were added.
+    private List<FsaEditListener> editListeners;
     private Set<Transition> transitions;
+    //stateIndex maps each state name to its state.
+    private Map<String, State> stateIndex;
+    //adjacency maps a fromState to a map of toStates, each holding the transitions between the pair.
+    private Map<State, Map<State, Set<Transition>>> adjacency;
+    //The initial, final and current states are kept up to date by the states themselves.
+    private Set<State> initialStates;
+    private Set<State> finalStates;
+    private Set<State> currentStates;
+    //currentFinalCount is the number of states that are both current and final.
+    private int currentFinalCount;
+    //compiled caches the result of compile(), until this FSA next changes.
+    private volatile CompiledFsa compiled;
+    //batchDepth is the number of batches begun and not yet committed.
+    //While it is above zero, the listeners are not told of each change;
+    //statesChanged, transitionsChanged and otherChanged record what to tell them
+    //when the last batch is committed.
+    private int batchDepth;
+    private boolean statesChanged;
+    private boolean transitionsChanged;
+    private boolean otherChanged;
 
 	public FsaImpl() {
+        this(16, 16);
+	}
+
+    //Create an FSA sized to hold the expected numbers of states and transitions without rehashing,
+    //for readers that know how large the FSA will be.
+    public FsaImpl(int expectedStates, int expectedTransitions) {
         //Instantiate the Set elements as HashSets.
-        this.states = new HashSet<State>();
-        this.transitions = new HashSet<Transition>();
+        this.states = new HashSet<State>(capacity(expectedStates));
+        this.transitions = new HashSet<Transition>(capacity(expectedTransitions));
+        this.stateIndex = new HashMap<String, State>(capacity(expectedStates));
+        this.adjacency = new HashMap<State, Map<State, Set<Transition>>>(capacity(expectedStates));
+        this.initialStates = new HashSet<State>();
+        this.finalStates = new HashSet<State>();
+        this.currentStates = new HashSet<State>();
         this.fsaListeners = new HashSet<FsaListener>();
-        this.inputEvents = new HashSet<String>();
-	}
+        this.editListeners = new ArrayList<FsaEditListener>();
+    }
+
+    //Return a HashMap capacity that holds n entries at the default load factor.
+    private static int capacity(int n) {
+        return (int)Math.min(1 << 30, Math.max(16, n * 4L / 3 + 1));
+    }
 
 	//Create a new State and add it to this FSA
     //Returns the new state
@@ -48,13 +86,15 @@ public class FsaImpl implements Fsa, FsaSim {
         }
 
         //The state is valid, and can be added.
-    	State addState = new StateImpl(name, x, y);
+    	State addState = new StateImpl(this, name, x, y);
     	this.states.add(addState);
-        Iterator it = this.fsaListeners.iterator();
+        this.stateIndex.put(name, addState);
+        this.compiled = null;
+        this.statesChanged = true;
+        this.notifyListeners();
+        Iterator it = this.editListeners.iterator();
         while (it.hasNext()) {
-            FsaPanel nextListener = (FsaPanel)it.next();
-            nextListener.updateFsa(this);
-            nextListener.statesChanged();
+            ((FsaEditListener)it.next()).stateAdded(addState);
         }
 
         return addState;
@@ -63,44 +103,54 @@ public class FsaImpl implements Fsa, FsaSim {
   	//Remove a state from the FSA
     //If the state does not exist, returns without error
     public void removeState(State s) {
+        if (!this.states.contains(s)) {
+            return;
+        }
+
+        //The listeners are told of the state and its transitions at once.
+        this.beginBatch();
         //Removing a state will break all transitions involving that state.
         //The associated transitions must then be removed as well.
         //Remove all transitions from this state.
-        Iterator it = ((StateImpl)s).transitionsFrom().iterator();
+        //(Iterate over copies, since removeTransition changes the state's transition sets)
+        Iterator it = new ArrayList<Transition>(s.transitionsFrom()).iterator();
         while (it.hasNext()) {
             Transition removeTransition = (Transition)it.next();
             this.removeTransition(removeTransition);
         }
 
         //Remove all transitions to this state.
-        it = ((StateImpl)s).transitionsTo().iterator();
+        it = new ArrayList<Transition>(s.transitionsTo()).iterator();
         while (it.hasNext()) {
             Transition removeTransition = (Transition)it.next();
             this.removeTransition(removeTransition);
         }
 
-        //Iterator listenerIt = this.fsaListeners.iterator();
-        //while (listenerIt.hasNext()) {
-        //    ((FsaPanel)listenerIt.next()).statesChanged();
-        //}
-
         this.states.remove(s);
+        this.stateIndex.remove(s.getName());
+        this.adjacency.remove(s);
+        this.initialStates.remove(s);
+        this.finalStates.remove(s);
+        if (this.currentStates.remove(s) && s.isFinal()) {
+            this.currentFinalCount--;
+        }
+
+        ((StateImpl)s).setFsa(null);
+        this.compiled = null;
+        it = this.editListeners.iterator();
+        while (it.hasNext()) {
+            ((FsaEditListener)it.next()).stateRemoved(s);
+        }
+
+        this.statesChanged = true;
+        this.commitBatch();
     }
 
     //Find and return the State with the given name
     //If no state exists with given name, return NULL
     public State findState(String stateName) {
-        //Iterate over the states.
-        Iterator it = this.states.iterator();
-        while (it.hasNext()) {
-            State nextState = (State)it.next();
-            //If the state whose name matches stateName is found.
-            if (nextState.getName().equals(stateName)) {
-                return nextState;
-            }
-        }
-
-        return null;
+        //Look the state up by name in the state index.
+        return this.stateIndex.get(stateName);
     }
 
     //Return a set containing all the states in this Fsa
@@ -144,20 +194,26 @@ public class FsaImpl implements Fsa, FsaSim {
         }
 
         //Check that an identical transition doesn't already exits.
-        if (this.transitions.contains(addTransition)) {
-            throw new IllegalArgumentException("Illegal argument");
+        //Only the transitions between the same two states need to be checked.
+        Iterator it = this.transitionsBetween(fromState, toState, false).iterator();
+        while (it.hasNext()) {
+            if (((Transition)it.next()).eventName().equals(addTransition.eventName())) {
+                throw new IllegalArgumentException("Illegal argument");
+            }
         }
 
         //The transition is valid, and can be added.
         this.transitions.add(addTransition);
+        this.transitionsBetween(fromState, toState, true).add(addTransition);
         //Connect the transition to the associated states.
-        ((StateImpl)(this.findState(fromState.getName()))).addFromTransition(addTransition);
-        ((StateImpl)(this.findState(toState.getName()))).addToTransition(addTransition);
-        Iterator it = this.fsaListeners.iterator();
+        ((StateImpl)fromState).addFromTransition(addTransition);
+        ((StateImpl)toState).addToTransition(addTransition);
+        this.compiled = null;
+        this.transitionsChanged = true;
+        this.notifyListeners();
+        it = this.editListeners.iterator();
         while (it.hasNext()) {
-            FsaPanel nextListener = (FsaPanel)it.next();
-            nextListener.updateFsa(this);
-            nextListener.transitionsChanged();
+            ((FsaEditListener)it.next()).transitionAdded(addTransition);
         }
 
         return addTransition;
@@ -166,14 +222,37 @@ public class FsaImpl implements Fsa, FsaSim {
     //Remove a transition from the FSA
     //If the transition does not exist, returns without error
     public void removeTransition(Transition t) {
+        if (!this.transitions.remove(t)) {
+            return;
+        }
+
         //Remove the tranition from the associated states.
-        ((StateImpl)(this.findState(t.fromState().getName()))).removeFromTransition(t);
-        ((StateImpl)(this.findState(t.toState().getName()))).removeToTransition(t);
-        this.transitions.remove(t);
-        //Iterator it = this.fsaListeners.iterator();
-        //while (it.hasNext()) {
-        //    ((FsaPanel)it.next()).transitionsChanged();
-        //}
+        ((StateImpl)t.fromState()).removeFromTransition(t);
+        ((StateImpl)t.toState()).removeToTransition(t);
+        //Remove the transition from the adjacency index, dropping empty entries.
+        Map<State, Set<Transition>> targets = this.adjacency.get(t.fromState());
+        Set<Transition> between = targets.get(t.toState());
+        between.remove(t);
+        if (between.isEmpty()) {
+            targets.remove(t.toState());
+            if (targets.isEmpty()) {
+                this.adjacency.remove(t.fromState());
+            }
+        }
+
+        this.compiled = null;
+        Iterator it = this.editListeners.iterator();
+        while (it.hasNext()) {
+            ((FsaEditListener)it.next()).transitionRemoved(t);
+        }
+
+        this.transitionsChanged = true;
+        this.notifyListeners();
+    }
+
+    //Return a set containing all the transitions in this Fsa
+    public Set<Transition> getTransitions() {
+        return Collections.unmodifiableSet(this.transitions);
     }
 
     //Find all the transitions between two states
@@ -189,69 +268,117 @@ public class FsaImpl implements Fsa, FsaSim {
             throw new IllegalArgumentException("Illegal argument");
         }
 
-        Set<Transition> foundTransitions = new HashSet<Transition>();
-        Iterator it = this.transitions.iterator();
-        while (it.hasNext()) {
-            Transition nextTransition = (Transition)it.next();
-            //If the transition has the associated states of fromState and toState.
-            if (nextTransition.fromState().equals(fromState)) {
-                if (nextTransition.toState().equals(toState)) {
-                    //Add the transition to a set of found transitions.
-                    foundTransitions.add(nextTransition);
-                }
+        //The adjacency index holds the transitions between the two states.
+        return Collections.unmodifiableSet(this.transitionsBetween(fromState, toState, false));
+    }
+
+    //Return the set in the adjacency index holding the transitions from fromState to toState.
+    //If there is no such set, an empty set is returned, or a new set is added if create is true.
+    private Set<Transition> transitionsBetween(State fromState, State toState, boolean create) {
+        Map<State, Set<Transition>> targets = this.adjacency.get(fromState);
+        if (targets == null) {
+            if (!create) {
+                return Collections.emptySet();
             }
+
+            targets = new HashMap<State, Set<Transition>>();
+            this.adjacency.put(fromState, targets);
+        }
+
+        Set<Transition> between = targets.get(toState);
+        if (between == null) {
+            if (!create) {
+                return Collections.emptySet();
+            }
+
+            between = new HashSet<Transition>(4);
+            targets.put(toState, between);
         }
 
-        return foundTransitions;
+        return between;
     }
 
     //Return the set of initial states of this Fsa
     public Set<State> getInitialStates() {
-        Set<State> initialStates = new HashSet<State>();
-        Iterator it = this.states.iterator();
-        while (it.hasNext()) {
-            State nextState = (State)it.next();
-            //If the state is initial.
-            if (nextState.isInitial()) {
-                //Add the state to a set of initial states.
-                initialStates.add(nextState);
-            }
-        }
-
-        return initialStates;
+        //The set is a read-only view, which follows later changes to the states.
+        return Collections.unmodifiableSet(this.initialStates);
     }
 
     //Return the set of final states of this Fsa
     public Set<State> getFinalStates() {
-        Set<State> finalStates = new HashSet<State>();
-        Iterator it = this.states.iterator();
+        return Collections.unmodifiableSet(this.finalStates);
+    }
+
+    //Returns a set containing all the current states of this FSA
+    public Set<State> getCurrentStates() {
+        return Collections.unmodifiableSet(this.currentStates);
+    }
+
+    //Called by a state of this FSA when it is set/cleared as an initial state.
+    void initialChanged(State s, boolean b) {
+        this.compiled = null;
+        if (b) {
+            this.initialStates.add(s);
+        }
+
+        else {
+            this.initialStates.remove(s);
+        }
+
+        Iterator it = this.editListeners.iterator();
         while (it.hasNext()) {
-            State nextState = (State)it.next();
-            //If the state is final.
-            if (nextState.isFinal()) {
-                //Add to a set of final states.
-                finalStates.add(nextState);
-            }
+            ((FsaEditListener)it.next()).initialChanged(s, b);
         }
 
-        return finalStates;
+        this.otherChanged = true;
+        this.notifyListeners();
     }
 
-    //Returns a set containing all the current states of this FSA
-    public Set<State> getCurrentStates() {
-        Set<State> currentStates = new HashSet<State>();
+    //Called by a state of this FSA when it is set/cleared as a final state.
+    void finalChanged(State s, boolean b) {
+        this.compiled = null;
+        if (s.isCurrent()) {
+            this.currentFinalCount += b ? 1 : -1;
+        }
 
-        Iterator it = this.states.iterator();
+        if (b) {
+            this.finalStates.add(s);
+        }
+
+        else {
+            this.finalStates.remove(s);
+        }
+
+        Iterator it = this.editListeners.iterator();
         while (it.hasNext()) {
-            State nextState = (State)it.next();
-            //If the state is current.
-            if (nextState.isCurrent()) {
-                //Add toi a set of current states.
-                currentStates.add(nextState);
-            }
+            ((FsaEditListener)it.next()).finalChanged(s, b);
         }
 
-        return currentStates;
+        this.otherChanged = true;
+        this.notifyListeners();
+    }
+
+    //Called by a state of this FSA when it has been moved by (dx,dy).
+    void stateMoved(State s, int dx, int dy) {
+        Iterator it = this.editListeners.iterator();
+        while (it.hasNext()) {
+            ((FsaEditListener)it.next()).stateMoved(s, dx, dy);
+        }
+    }
+
+    //Called by a state of this FSA when it is set/cleared as a current state.
+    void currentChanged(State s, boolean b) {
+        if (s.isFinal()) {
+            this.currentFinalCount += b ? 1 : -1;
+        }
+
+        if (b) {
+            this.currentStates.add(s);
+        }
+
+        else {
+            this.currentStates.remove(s);
+        }
     }
 
     //Return a string describing this Fsa
@@ -265,41 +392,54 @@ public class FsaImpl implements Fsa, FsaSim {
     //for each final state in the FSA, a line (terminated by \n) containing
     //  FINAL followed the name of the state
     public String toString() {
-        String fsaString = "";
-        //toString the states.
+        StringBuilder fsaString = new StringBuilder();
+        try {
+            this.describeTo(fsaString);
+        }
+
+        catch (IOException io) {
+            //A StringBuilder never throws IOException.
+            throw new IllegalStateException(io);
+        }
+
+        return fsaString.toString();
+    }
+
+    //Write the description of this Fsa returned by toString to a, one line at a time.
+    //Nothing is built up in memory, so a large FSA can be streamed straight to a Writer in linear time.
+    public void describeTo(Appendable a) throws IOException {
+        //Describe the states.
         Iterator it = this.states.iterator();
         while (it.hasNext()) {
-            fsaString += "STATE ";
-            fsaString += ((State)it.next()).toString();
+            a.append("STATE ");
+            ((StateImpl)it.next()).describeTo(a);
             //Terminate the line
-            fsaString += "\n";
+            a.append('\n');
         }
 
-        //toString the transitions.
+        //Describe the transitions.
         it = this.transitions.iterator();
         while (it.hasNext()) {
-            fsaString += "TRANSITION ";
-            fsaString += ((Transition)it.next()).toString();
-            fsaString += "\n";
+            a.append("TRANSITION ");
+            ((TransitionImpl)it.next()).describeTo(a);
+            a.append('\n');
         }
 
-        //toString the initial states.
-        it = this.getInitialStates().iterator();
+        //Describe the initial states.
+        it = this.initialStates.iterator();
         while (it.hasNext()) {
-            fsaString += "INITIAL ";
-            fsaString += ((State)it.next()).getName();
-            fsaString += "\n";
+            a.append("INITIAL ");
+            a.append(((State)it.next()).getName());
+            a.append('\n');
         }
 
-        //toString the final states.
-        it = this.getFinalStates().iterator();
+        //Describe the final states.
+        it = this.finalStates.iterator();
         while (it.hasNext()) {
-            fsaString += "FINAL ";
-            fsaString += ((State)it.next()).getName();
-            fsaString += "\n";
+            a.append("FINAL ");
+            a.append(((State)it.next()).getName());
+            a.append('\n');
         }
-
-        return fsaString;
     }
 
     //Add a listener to this FSA
@@ -312,22 +452,111 @@ public class FsaImpl implements Fsa, FsaSim {
         this.fsaListeners.remove(fl);
     }
 
-    //Reset the simulation to its initial state(s)
-    public void reset() {
-        //To reset the simulator, reset what states the simulator is currently in.
-        //All current states should only be the initial states.
-        Iterator it = this.getCurrentStates().iterator();
-        while (it.hasNext()) {
-            //Set all current states to false (no current states).
-            //(Don't bother checking if they are initial, as the initial states will be iterated over anyway)
-            ((StateImpl)it.next()).setCurrent(false);
+    //Begin a batch of changes to this FSA.
+    //Until the batch is committed, the listeners are not told of each change;
+    //commitBatch then tells them once of all the changes made in the batch.
+    //Batches may be nested, and the listeners are told when the outermost one is committed.
+    //Edit listeners are still told of each edit as it is made.
+    public void beginBatch() {
+        this.batchDepth++;
+    }
+
+    //Commit the batch begun by the matching beginBatch, and tell the listeners of its changes
+    //if it is the outermost batch.
+    public void commitBatch() {
+        if (this.batchDepth == 0) {
+            throw new IllegalStateException("No batch begun");
+        }
+
+        this.batchDepth--;
+        this.notifyListeners();
+    }
+
+    //Begin a batch of changes to f, if it is an FsaImpl.
+    //Used by the readers, which read into any Fsa.
+    static void beginBatch(Fsa f) {
+        if (f instanceof FsaImpl) {
+            ((FsaImpl)f).beginBatch();
         }
+    }
 
-        it = this.getInitialStates().iterator();
+    //Commit a batch of changes to f begun by beginBatch(f).
+    static void commitBatch(Fsa f) {
+        if (f instanceof FsaImpl) {
+            ((FsaImpl)f).commitBatch();
+        }
+    }
+
+    //Tell the listeners of the changes made since they were last told, unless a batch is open.
+    //Listeners are told on the caller's thread, before the change returns;
+    //an FsaEventBus delivers the changes themselves, on an executor.
+    private void notifyListeners() {
+        if (this.batchDepth > 0 || !(this.statesChanged || this.transitionsChanged || this.otherChanged)) {
+            return;
+        }
+
+        boolean states = this.statesChanged;
+        boolean transitions = this.transitionsChanged;
+        boolean other = this.otherChanged;
+        this.statesChanged = false;
+        this.transitionsChanged = false;
+        this.otherChanged = false;
+        Iterator it = this.fsaListeners.iterator();
         while (it.hasNext()) {
-            //Set all of the initial states to current.
-            ((StateImpl)it.next()).setCurrent(true);
+            FsaListener nextListener = (FsaListener)it.next();
+            if (states) {
+                nextListener.statesChanged();
+            }
+
+            if (transitions) {
+                nextListener.transitionsChanged();
+            }
+
+            if (other) {
+                nextListener.otherChanged();
+            }
+        }
+    }
+
+    //Add a listener to be told of each edit to this FSA and its states
+    public void addEditListener(FsaEditListener el) {
+        this.editListeners.add(el);
+    }
+
+    //Remove an edit listener from this FSA
+    public void removeEditListener(FsaEditListener el) {
+        this.editListeners.remove(el);
+    }
+
+    //Return an immutable, integer-encoded copy of this FSA's states and transitions.
+    //Later changes to this FSA do not affect the copy.
+    //The copy is reused until this FSA next changes.
+    public CompiledFsa compile() {
+        CompiledFsa c = this.compiled;
+        if (c == null) {
+            c = new CompiledFsa(this);
+            this.compiled = c;
         }
+
+        return c;
+    }
+
+    //Start a new simulation session of this FSA.
+    //Each session has its own current states, independent of this FSA's own simulation and of other sessions,
+    //and only reads a shared CompiledFsa, so many sessions can be driven from different threads at once.
+    //A session simulates this FSA as it was when the session was started.
+    public FsaSim newSession() {
+        return new FrontierSim(this.compile());
+    }
+
+    //Reset the simulation to its initial state(s)
+    public void reset() {
+        //To reset the simulator, reset what states the simulator is currently in.
+        //All current states should only be the initial states,
+        //and the states reached from them by epsilon-transitions.
+        Set<State> nextStates = new HashSet<State>(this.initialStates);
+        this.addEpsilonClosure(nextStates);
+        this.setCurrentStates(nextStates);
     }
 
     //Take one step in the simulation
@@ -342,56 +571,68 @@ public class FsaImpl implements Fsa, FsaSim {
             event = "";
         }
 
-        this.inputEvents.add(event);
-        Iterator currentStates = this.getCurrentStates().iterator();
+        //The current states are already closed under epsilon-transitions, so an epsilon event changes nothing.
+        if (event.length() == 0) {
+            return;
+        }
+
+        //Find all of the next states before changing any flags,
+        //so the result doesn't depend on the order the current states are visited in.
+        Set<State> nextStates = new HashSet<State>();
+        Iterator currentStates = this.currentStates.iterator();
         while (currentStates.hasNext()) {
             State nextState = (State)currentStates.next();
-            //Set the current state to false, since the transition will either move from this state, or back to this state.
-            ((StateImpl)nextState).setCurrent(false);
-            Iterator fromTransitions = nextState.transitionsFrom().iterator();
-            //Check all of the transitions from the current states.
+            //Only the transitions from the current state caused by the entered event are checked.
+            Iterator fromTransitions = nextState.transitionsFrom(event).iterator();
             while (fromTransitions.hasNext()) {
-                Transition nextTransition = (Transition)fromTransitions.next();
-                //If the event that causes the transition is entered.
-                if ((nextTransition).eventName().equals(event)) {
-                    //Make the transition.
-                    //Set the toState to current.
-                    ((StateImpl)nextTransition.toState()).setCurrent(true);
-                }
+                //Make the transition.
+                nextStates.add(((Transition)fromTransitions.next()).toState());
             }
         }
+
+        this.addEpsilonClosure(nextStates);
+        this.setCurrentStates(nextStates);
     }
 
-    //Returns true if the simulation has recognised
-    //the sequence of events it has been given
-    public boolean isRecognised() {
-        //The simulation has recognised the sequence of events if all of the input events are events used by transitions.
-        //Checks all of the input events, and compares them against transition eventNames.
-        Iterator inputEvents = this.inputEvents.iterator();
-        Iterator transitionIt = this.transitions.iterator();
-        //Iterate over input events.
-        while (inputEvents.hasNext()) {
-            String nextInput = (String)inputEvents.next();
-            //Iterate over each transition.
-            while (transitionIt.hasNext()) {
-                //If the transition eventName matches the input event.
-                if (((Transition)transitionIt.next()).eventName().equals(nextInput)) {
-                    //Move on to the next input.
-                    nextInput = (String)inputEvents.next();
-                    //Reset the transition iterator from the beginning.
-                    //(In case later inputs match previous transition eventNames)
-                    transitionIt = this.transitions.iterator();
+    //Add to the set of states all of the states reachable from them by epsilon-transitions.
+    private void addEpsilonClosure(Set<State> states) {
+        List<State> toVisit = new ArrayList<State>(states);
+        while (!toVisit.isEmpty()) {
+            State nextState = toVisit.remove(toVisit.size() - 1);
+            Iterator it = nextState.transitionsFrom(null).iterator();
+            while (it.hasNext()) {
+                State toState = ((Transition)it.next()).toState();
+                //Only visit states not already in the set.
+                if (states.add(toState)) {
+                    toVisit.add(toState);
                 }
+            }
+        }
+    }
 
-                //If the input cannot be matched, and all transitions have been checked.
-                else if (!transitionIt.hasNext()) {
-                    //The sequence of events has not been recognised.
-                    return false;
-                }
+    //Make exactly the given states current.
+    private void setCurrentStates(Set<State> nextStates) {
+        //Clear the current states that are not staying current.
+        //(Iterate over a copy, since clearing a state removes it from the current states)
+        Iterator it = new ArrayList<State>(this.currentStates).iterator();
+        while (it.hasNext()) {
+            State nextState = (State)it.next();
+            if (!nextStates.contains(nextState)) {
+                ((StateImpl)nextState).setCurrent(false);
             }
         }
 
-        //The sequence of events has been recognised.
-        return true;
+        it = nextStates.iterator();
+        while (it.hasNext()) {
+            ((StateImpl)it.next()).setCurrent(true);
+        }
+    }
+
+    //Returns true if the simulation has recognised
+    //the sequence of events it has been given
+    public boolean isRecognised() {
+        //The simulation has recognised the sequence of events if any of the current states is a final state.
+        //The number of current final states is kept up to date as states change.
+        return this.currentFinalCount > 0;
     }
 }
\ No newline at end of file
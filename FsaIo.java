@@ -6,6 +6,9 @@ public interface FsaIo
 {
     //This class handles reading and writing FSA representations as 
     //described in the practical specification
+    //It is for text formats, read and written as characters. A binary format must be
+    //read and written as bytes (as FsaBinaryReaderWriter is), not through a Reader or Writer,
+    //whose charset would corrupt the bytes.
 
     //Read the description of a finite-state automaton from the 
     //Reader , r, and transfer it to Fsa, f.
@@ -0,0 +1,379 @@
+import java.io.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.*;
+
+public class FsaJournal implements FsaEditListener {
+    //Saves an FSA as a snapshot file, in the format read by FsaReaderWriter, plus a journal of
+    //the edits made since, in a file next to it (the snapshot's name with ".journal" added).
+    //Each edit to the attached FSA is kept as a small record, and save appends the records
+    //made since the last save to the journal, so saving costs in proportion to the edits.
+    //Once the journal holds more than a set number of records, save compacts it instead:
+    //the whole FSA is written as a new snapshot, and the journal is deleted.
+    //load reads the snapshot (with MappedFsaReader, which reads any file FsaReaderWriter reads) and replays
+    //the journal over it.
+    //The journal starts with the checksum of the snapshot it follows, so a journal left over
+    //from before a compaction (or an edited snapshot) is not replayed over the wrong snapshot.
+    //The journal records are:
+    //  state name x y, transition from event to, initial name, final name (as in the snapshot)
+    //  remove-state name, remove-transition from event to, move name dx dy,
+    //  not-initial name, not-final name
+    public static final int DEFAULT_COMPACT_RECORDS = 10000;
+    private static final String HEADER = "# journal";
+
+    private final File base;
+    private final File journal;
+    private final int compactRecords;
+    private FsaImpl fsa;
+    //pending holds the records made since the last save.
+    private final List<String> pending;
+    //The number of records in the journal file.
+    private int journalRecords;
+    //The checksum of the snapshot file, and whether the journal file follows it.
+    private long baseChecksum;
+    private boolean journalCurrent;
+    //The state moved by the last pending record, so that a drag is saved as one move.
+    private State lastMoved;
+    private int lastDx;
+    private int lastDy;
+
+    public FsaJournal(File baseIn) {
+        this(baseIn, DEFAULT_COMPACT_RECORDS);
+    }
+
+    public FsaJournal(File baseIn, int compactRecordsIn) {
+        this.base = baseIn;
+        this.journal = new File(baseIn.getPath() + ".journal");
+        this.compactRecords = compactRecordsIn;
+        this.pending = new ArrayList<String>();
+        this.journalRecords = 0;
+        this.journalCurrent = false;
+    }
+
+    //Return the snapshot file
+    public File getFile() {
+        return this.base;
+    }
+
+    //Return the journal file
+    public File getJournalFile() {
+        return this.journal;
+    }
+
+    //Read the snapshot into f, replay the journal over it, and then record f's edits.
+    //If an error is detected, throw an exception that indicates the line (of the snapshot or
+    //the journal) where the error was detected; an error in the journal names the journal file.
+    public void load(FsaImpl f) throws IOException, FsaFormatException {
+        this.baseChecksum = checksum(this.base);
+        this.journalRecords = 0;
+        this.journalCurrent = false;
+        //f's listeners are told of the snapshot and the replayed journal at once.
+        f.beginBatch();
+        try {
+            new MappedFsaReader().read(this.base, f);
+            if (this.journal.exists()) {
+                this.replay(f);
+            }
+        }
+
+        finally {
+            f.commitBatch();
+        }
+
+        this.attach(f);
+    }
+
+    //Start recording the edits of f, which is saved to the snapshot by the next save.
+    public void attach(FsaImpl f) {
+        this.detach();
+        this.fsa = f;
+        f.addEditListener(this);
+    }
+
+    //Stop recording edits.
+    public void detach() {
+        if (this.fsa != null) {
+            this.fsa.removeEditListener(this);
+            this.fsa = null;
+        }
+
+        this.pending.clear();
+        this.lastMoved = null;
+    }
+
+    //Indicate if there are edits that have not been saved
+    public boolean isModified() {
+        return !this.pending.isEmpty();
+    }
+
+    //Save the edits made since the last save, by appending them to the journal.
+    //If there is no snapshot yet, or the journal has grown too long, compact instead.
+    public void save() throws IOException {
+        if (this.fsa == null) {
+            throw new IllegalStateException("No FSA attached");
+        }
+
+        if (!this.base.exists() || this.journalRecords + this.pending.size() > this.compactRecords) {
+            this.compact();
+            return;
+        }
+
+        if (this.pending.isEmpty()) {
+            return;
+        }
+
+        //A journal that does not follow the snapshot is started again.
+        try (FileOutputStream out = new FileOutputStream(this.journal, this.journalCurrent)) {
+            Writer w = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            if (!this.journalCurrent) {
+                w.write(HEADER + " " + Long.toHexString(this.baseChecksum) + "\n");
+                this.journalRecords = 0;
+            }
+
+            Iterator it = this.pending.iterator();
+            while (it.hasNext()) {
+                w.write((String)it.next());
+                w.write('\n');
+            }
+
+            w.flush();
+            out.getFD().sync();
+        }
+
+        this.journalCurrent = true;
+        this.journalRecords += this.pending.size();
+        this.pending.clear();
+        this.lastMoved = null;
+    }
+
+    //Write the whole FSA as a new snapshot, and delete the journal.
+    //The snapshot is written to a temporary file first, and moved over the old one once complete.
+    public void compact() throws IOException {
+        if (this.fsa == null) {
+            throw new IllegalStateException("No FSA attached");
+        }
+
+        File temp = new File(this.base.getPath() + ".tmp");
+        CRC32 crc = new CRC32();
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            Writer w = new BufferedWriter(new OutputStreamWriter(new CheckedOutputStream(out, crc), StandardCharsets.UTF_8));
+            new FsaReaderWriter().write(w, this.fsa);
+            w.flush();
+            out.getFD().sync();
+        }
+
+        try {
+            Files.move(temp.toPath(), this.base.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp.toPath(), this.base.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        //The old journal no longer matches the snapshot's checksum, even if deleting it fails.
+        this.baseChecksum = crc.getValue();
+        Files.deleteIfExists(this.journal.toPath());
+        this.journalCurrent = false;
+        this.journalRecords = 0;
+        this.pending.clear();
+        this.lastMoved = null;
+    }
+
+    //Replay the journal's records over f, if the journal follows the snapshot.
+    //A last line without a line terminator was cut short while being written, and is left out;
+    //it is also cut from the file, so that the next save does not append to it.
+    private void replay(FsaImpl f) throws IOException, FsaFormatException {
+        byte[] bytes = Files.readAllBytes(this.journal.toPath());
+        String text = new String(bytes, StandardCharsets.UTF_8);
+        String[] lines = text.split("\n", -1);
+        //A header cut short is no header, and the journal is started again by the next save.
+        if (lines.length < 2 || !lines[0].equals(HEADER + " " + Long.toHexString(this.baseChecksum))) {
+            return;
+        }
+
+        if (lines[lines.length - 1].length() > 0) {
+            int end = bytes.length;
+            while (end > 0 && bytes[end - 1] != '\n') {
+                end--;
+            }
+
+            try (RandomAccessFile file = new RandomAccessFile(this.journal, "rw")) {
+                file.setLength(end);
+            }
+        }
+
+        //The last element follows the last line terminator.
+        for (int i = 1; i < lines.length - 1; i++) {
+            String line = lines[i].trim();
+            if (line.length() > 0 && line.charAt(0) != '#') {
+                try {
+                    this.replayRecord(line, i + 1, f);
+                }
+
+                //Name the journal, so that the error is not taken for one at the same line of the snapshot.
+                catch (FsaFormatException e) {
+                    throw new FsaFormatException(e.getLineNr(), "Illegal format in " + this.journal.getName());
+                }
+
+                this.journalRecords++;
+            }
+        }
+
+        this.journalCurrent = true;
+    }
+
+    //Apply one journal record to f.
+    private void replayRecord(String line, int lineNr, FsaImpl f) throws FsaFormatException {
+        StringTokenizer st = new StringTokenizer(line);
+        String[] tokens = new String[st.countTokens()];
+        for (int i = 0; i < tokens.length; i++) {
+            tokens[i] = st.nextToken();
+        }
+
+        String keyword = tokens[0];
+        try {
+            if (keyword.equals("state") && tokens.length == 4) {
+                f.newState(tokens[1], Integer.parseInt(tokens[2]), Integer.parseInt(tokens[3]));
+            }
+
+            else if (keyword.equals("transition") && tokens.length == 4) {
+                f.newTransition(state(f, tokens[1], lineNr), state(f, tokens[3], lineNr), event(tokens[2]));
+            }
+
+            else if (keyword.equals("remove-state") && tokens.length == 2) {
+                f.removeState(state(f, tokens[1], lineNr));
+            }
+
+            else if (keyword.equals("remove-transition") && tokens.length == 4) {
+                f.removeTransition(transition(f, tokens, lineNr));
+            }
+
+            else if (keyword.equals("move") && tokens.length == 4) {
+                state(f, tokens[1], lineNr).moveBy(Integer.parseInt(tokens[2]), Integer.parseInt(tokens[3]));
+            }
+
+            else if (keyword.equals("initial") && tokens.length == 2) {
+                state(f, tokens[1], lineNr).setInitial(true);
+            }
+
+            else if (keyword.equals("not-initial") && tokens.length == 2) {
+                state(f, tokens[1], lineNr).setInitial(false);
+            }
+
+            else if (keyword.equals("final") && tokens.length == 2) {
+                state(f, tokens[1], lineNr).setFinal(true);
+            }
+
+            else if (keyword.equals("not-final") && tokens.length == 2) {
+                state(f, tokens[1], lineNr).setFinal(false);
+            }
+
+            else {
+                throw new FsaFormatException(lineNr, "Illegal format");
+            }
+        }
+
+        //Also catches NumberFormatException.
+        catch (IllegalArgumentException e) {
+            throw new FsaFormatException(lineNr, "Illegal format");
+        }
+    }
+
+    //Return the named state of f, which must exist.
+    private static State state(Fsa f, String name, int lineNr) throws FsaFormatException {
+        State s = f.findState(name);
+        if (s == null) {
+            throw new FsaFormatException(lineNr, "Illegal format");
+        }
+
+        return s;
+    }
+
+    //Return the transition of a remove-transition record, which must exist.
+    private static Transition transition(Fsa f, String[] tokens, int lineNr) throws FsaFormatException {
+        String event = event(tokens[2]);
+        Iterator it = f.findTransition(state(f, tokens[1], lineNr), state(f, tokens[3], lineNr)).iterator();
+        while (it.hasNext()) {
+            Transition t = (Transition)it.next();
+            if (event == null ? isEpsilon(t) : event.equals(t.eventName())) {
+                return t;
+            }
+        }
+
+        throw new FsaFormatException(lineNr, "Illegal format");
+    }
+
+    //Return the event of a record, or null for "?" (an epsilon-transition).
+    private static String event(String token) {
+        return token.equals("?") ? null : token;
+    }
+
+    private static boolean isEpsilon(Transition t) {
+        return t.eventName() == null || t.eventName().length() == 0;
+    }
+
+    //Return the record text for a transition: from event to.
+    private static String transitionRecord(Transition t) {
+        return t.fromState().getName() + " " + (isEpsilon(t) ? "?" : t.eventName()) + " " + t.toState().getName();
+    }
+
+    //Return the CRC32 of the file's contents.
+    private static long checksum(File file) throws IOException {
+        CRC32 crc = new CRC32();
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] buf = new byte[65536];
+            int read;
+            while ((read = in.read(buf)) > 0) {
+                crc.update(buf, 0, read);
+            }
+        }
+
+        return crc.getValue();
+    }
+
+    //Add a record to those to be saved.
+    private void record(String record) {
+        this.pending.add(record);
+        this.lastMoved = null;
+    }
+
+    public void stateAdded(State s) {
+        this.record("state " + s.getName() + " " + s.getXpos() + " " + s.getYpos());
+    }
+
+    public void stateRemoved(State s) {
+        this.record("remove-state " + s.getName());
+    }
+
+    public void transitionAdded(Transition t) {
+        this.record("transition " + transitionRecord(t));
+    }
+
+    public void transitionRemoved(Transition t) {
+        this.record("remove-transition " + transitionRecord(t));
+    }
+
+    public void stateMoved(State s, int dx, int dy) {
+        //Fold successive moves of the same state into one record.
+        if (s == this.lastMoved) {
+            this.lastDx += dx;
+            this.lastDy += dy;
+            this.pending.set(this.pending.size() - 1, "move " + s.getName() + " " + this.lastDx + " " + this.lastDy);
+            return;
+        }
+
+        this.record("move " + s.getName() + " " + dx + " " + dy);
+        this.lastMoved = s;
+        this.lastDx = dx;
+        this.lastDy = dy;
+    }
+
+    public void initialChanged(State s, boolean b) {
+        this.record((b ? "initial " : "not-initial ") + s.getName());
+    }
+
+    public void finalChanged(State s, boolean b) {
+        this.record((b ? "final " : "not-final ") + s.getName());
+    }
+}
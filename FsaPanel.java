@@ -1,19 +1,95 @@
 import java.io.*;
 import java.awt.*;
 import java.awt.event.*;
+import java.awt.image.*;
 import javax.swing.*;
 import javax.swing.SwingUtilities;
 import javax.swing.filechooser.*;
 import java.util.*;
 import java.beans.*;
 
-public class FsaPanel extends JPanel implements FsaListener, MouseListener, MouseMotionListener {
+public class FsaPanel extends JPanel implements FsaListener, FsaChangeListener, MouseListener, MouseMotionListener, MouseWheelListener {
+    //The time between frames: changes are repainted at most this often.
+    public static final int FRAME_MILLIS = 16;
+    //The canvas is drawn in less detail as it is zoomed out.
+    //Below LABEL_SCALE, the names of the states and the events of the transitions are left out.
+    //Below BUNDLE_SCALE, the transitions between two states (either way) are drawn as one straight
+    //line between their centres, loops and arrowheads are left out, and each state is a square.
+    //Below DOT_SCALE, the transitions are left out, and the states are counted into the pixels
+    //they fall in, each pixel holding any states being drawn as one dot.
+    public static final double LABEL_SCALE = 0.5;
+    public static final double BUNDLE_SCALE = 0.15;
+    public static final double DOT_SCALE = 0.04;
+    //The colours (as ARGB) of a dot for states, and for selected states.
+    private static final int DOT = 0xFF000000;
+    private static final int SELECTED_DOT = 0xFF0000FF;
+    public static final double MIN_SCALE = 0.01;
+    public static final double MAX_SCALE = 8;
+    //The order of the transitions between two states, by event, for bending each by a different amount.
+    //The order the canvas draws states in, so that overlapping states are always drawn the same way:
+    //top to bottom, then left to right, then by name.
+    private static final Comparator<State> PAINT_ORDER = new Comparator<State>() {
+        public int compare(State s1, State s2) {
+            if (s1.getYpos() != s2.getYpos()) {
+                return s1.getYpos() < s2.getYpos() ? -1 : 1;
+            }
+
+            if (s1.getXpos() != s2.getXpos()) {
+                return s1.getXpos() < s2.getXpos() ? -1 : 1;
+            }
+
+            return s1.getName().compareTo(s2.getName());
+        }
+    };
+    private static final Comparator<Transition> EVENT_ORDER = new Comparator<Transition>() {
+        public int compare(Transition t1, Transition t2) {
+            return t1.eventName().compareTo(t2.eventName());
+        }
+    };
     private FsaImpl fsa;
-    private Set<State> states;
-    private Set<StateIcon> icons;
+    //icons maps each state of the FSA to its icon (when the panel is not a canvas).
+    private Map<State, StateIcon> icons;
+    //canvas is true when the panel draws the states itself, rather than with a StateIcon for each.
+    //Swing cannot lay out and paint tens of thousands of components quickly, so a large FSA
+    //is best drawn on the canvas.
+    private boolean canvas;
+    //stateIndex holds the box each state is drawn in, and transitionIndex the box around each
+    //transition's line, so that painting only visits what meets the clip.
+    private SpatialIndex<State> stateIndex;
+    private SpatialIndex<Transition> transitionIndex;
+    //edges holds the geometry of each transition, until one of its states moves,
+    //or a transition between the same states is added or removed.
+    private Map<Transition, EdgeGeometry> edges;
+    //bundles maps each state to the bundles of the states it has transitions to or from (other than itself),
+    //each bundle standing for all the transitions between a pair of states; bundleIndex holds the box
+    //around each bundle's line, so that below BUNDLE_SCALE painting visits each pair once.
+    private Map<State, Map<State, Bundle>> bundles;
+    private SpatialIndex<Bundle> bundleIndex;
+    //The view of the canvas: the point of the FSA at the panel's top left corner, and the scale
+    //(pixels per unit of the FSA's coordinates). Icons are always drawn as if at (0,0) and scale 1.
+    private double viewX;
+    private double viewY;
+    private double scale;
+    //dots is the image the states are drawn into below DOT_SCALE, kept for the next frame.
+    private BufferedImage dots;
+    //selected holds the selected states, so that finding them costs in proportion to how many there are.
+    private Set<State> selected;
+    //dirty is the union of the areas changed since the last frame, or null if there are none.
+    //The frame timer is started by the first change after a frame, and repaints dirty when it fires,
+    //so a burst of changes (such as dragging many states) is repainted once a frame.
+    private Rectangle dirty;
+    private javax.swing.Timer frame;
+    //The number of paints, and the times they took, since the frame times were last reset.
+    private int frameCount;
+    private long lastFrameNanos;
+    private long maxFrameNanos;
+    private long totalFrameNanos;
     //State 0 => Idle
     //State 1 => Selecting
     //State 2 => Dragging
+    //State 3 => Panning
+    //x0, y0, x1 and y1 are in the FSA's coordinates, except when panning, when x0 and y0 are the
+    //last mouse position on the panel.
     private int state;
     private int x0;
     private int y0;
@@ -22,80 +98,489 @@ public class FsaPanel extends JPanel implements FsaListener, MouseListener, Mous
 
 	public FsaPanel(FsaImpl fsaIn) {
         this.fsa = fsaIn;
-        this.states = new HashSet<State>();
-        this.icons = new HashSet<StateIcon>();
+        this.icons = new IdentityHashMap<State, StateIcon>();
+        this.canvas = false;
+        this.stateIndex = new SpatialIndex<State>();
+        this.transitionIndex = new SpatialIndex<Transition>();
+        this.edges = new IdentityHashMap<Transition, EdgeGeometry>();
+        this.bundles = new IdentityHashMap<State, Map<State, Bundle>>();
+        this.bundleIndex = new SpatialIndex<Bundle>();
+        this.viewX = 0;
+        this.viewY = 0;
+        this.scale = 1;
+        this.selected = Collections.newSetFromMap(new IdentityHashMap<State, Boolean>());
+        this.frame = new javax.swing.Timer(FRAME_MILLIS, new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                FsaPanel.this.flushDirty();
+            }
+        } );
+        this.frame.setRepeats(false);
         this.state = 0;
         this.addMouseListener(this);
         this.addMouseMotionListener(this);
+        this.addMouseWheelListener(this);
         this.x0 = 0;
         this.y0 = 0;
         this.x1 = 0;
         this.y1 = 0;
 		this.setLayout(null);
+        this.statesChanged();
 	}
 
 	//Called whenever the number of states in the FSA has changed
+    //Adds an icon for each state that does not have one yet, and removes the icons
+    //of states no longer in the FSA, in one pass over each, so that many states added at once
+    //(as when a file is read) cost one call. Only the states added, removed or moved since
+    //they were last indexed are indexed again, along with the transitions of those moved.
     public void statesChanged() {
-        StateImpl[] fsaStates = this.fsa.getStates().toArray(new StateImpl[this.fsa.getStates().size()]);
-        if (this.states.size() == 0) {
-            StateIcon icon = new StateIcon(fsaStates[0]);
-            fsaStates[0].addListener(icon);
-            this.add(icon);
-            icon.addMouseListener(this);
-            icon.addMouseMotionListener(this);
-            icon.stateHasChanged();
-            this.states.add(fsaStates[0]);
-            this.icons.add(icon);
+        Iterator it = this.icons.keySet().iterator();
+        while (it.hasNext()) {
+            State s = (State)it.next();
+            if (!this.fsa.getStates().contains(s)) {
+                this.removeIcon(this.icons.get(s));
+                it.remove();
+            }
         }
 
-        else {
-    	    State[] stateArray = this.states.toArray(new State[this.states.size()]);
-            for (int i = 0; i < fsaStates.length;) {
-                for (int j = 0; j < stateArray.length; j++) {
-                    if (fsaStates[i] == stateArray[j]) {
-                        i++;
-                        if (i >= fsaStates.length - 1) {
-                            j = stateArray.length;
-                        }
-
-                        else {
-                            j = 0;
-                        }
-                    }
+        this.selected.retainAll(this.fsa.getStates());
 
-                    else if (j == stateArray.length - 1) {
-                        StateIcon icon = new StateIcon(fsaStates[i]);
-                        fsaStates[i].addListener(icon);
-                        this.add(icon);
-                        icon.addMouseListener(this);
-                        icon.addMouseMotionListener(this);
-                        icon.stateHasChanged();
-                        this.states.add(fsaStates[i]);
-                        this.icons.add(icon);
-                        i++;
-                    }
+        it = new ArrayList<State>(this.stateIndex.items()).iterator();
+        while (it.hasNext()) {
+            State s = (State)it.next();
+            if (!this.fsa.getStates().contains(s)) {
+                this.repaintBox(this.stateIndex.bounds(s));
+                this.stateIndex.remove(s);
+            }
+        }
+
+        it = this.fsa.getStates().iterator();
+        while (it.hasNext()) {
+            State s = (State)it.next();
+            Rectangle was = this.stateIndex.bounds(s);
+            if (was == null || was.x != s.getXpos() || was.y != s.getYpos()) {
+                this.indexState(s);
+                //A new state's transitions are indexed with the others that are new.
+                if (was != null) {
+                    this.moveTransitions(s);
                 }
             }
+
+            if (!this.canvas) {
+                this.addIcon(s);
+            }
+        }
+
+        this.transitionsChanged();
+    }
+
+    //Called (on the event dispatch thread, by an FsaEventBus) with the changes made to the FSA.
+    //Only the states and transitions changed are indexed, and only where they were or are is repainted.
+    public void fsaChanged(FsaChange change) {
+        //A change made before the panel was given another FSA, or one followed by a removal
+        //not yet delivered, may name a state or transition that is not in the FSA.
+        Iterator it = change.getRemovedTransitions().iterator();
+        while (it.hasNext()) {
+            Transition t = (Transition)it.next();
+            this.repaintBox(this.transitionIndex.bounds(t));
+            this.transitionIndex.remove(t);
+            this.edges.remove(t);
+            //The transitions left between the two states are bent afresh.
+            this.indexBetween(t.fromState(), t.toState());
+        }
+
+        it = change.getRemovedStates().iterator();
+        while (it.hasNext()) {
+            State s = (State)it.next();
+            this.selected.remove(s);
+            StateIcon icon = this.icons.remove(s);
+            if (icon != null) {
+                this.removeIcon(icon);
+            }
+
+            this.repaintBox(this.stateIndex.bounds(s));
+            this.stateIndex.remove(s);
+        }
+
+        it = change.getAddedStates().iterator();
+        while (it.hasNext()) {
+            State s = (State)it.next();
+            if (this.fsa.getStates().contains(s)) {
+                this.indexState(s);
+                if (!this.canvas) {
+                    this.addIcon(s);
+                }
+            }
+        }
+
+        it = change.getAddedTransitions().iterator();
+        while (it.hasNext()) {
+            Transition t = (Transition)it.next();
+            if (this.fsa.getTransitions().contains(t)) {
+                this.indexBetween(t.fromState(), t.toState());
+            }
+        }
+
+        it = change.getMovedStates().iterator();
+        while (it.hasNext()) {
+            State s = (State)it.next();
+            if (this.stateIndex.contains(s)) {
+                this.indexState(s);
+                this.updateIcon(s);
+                this.moveTransitions(s);
+            }
+        }
+
+        it = change.getMarkedStates().iterator();
+        while (it.hasNext()) {
+            State s = (State)it.next();
+            this.repaintBox(this.stateIndex.bounds(s));
+            this.updateIcon(s);
+        }
+    }
+
+    //Index the state's box where the state now is, and repaint where it was and where it is.
+    private void indexState(State s) {
+        this.repaintBox(this.stateIndex.bounds(s));
+        this.stateIndex.put(s, s.getXpos(), s.getYpos(), StateIcon.WIDTH, StateIcon.HEIGHT);
+        this.repaintBox(this.stateIndex.bounds(s));
+    }
+
+    //Work out afresh the geometry of the transitions to and from the state, which has moved,
+    //once for each state it has transitions with, and index its bundles where they now are.
+    private void moveTransitions(State s) {
+        Set<State> others = Collections.newSetFromMap(new IdentityHashMap<State, Boolean>());
+        Iterator it = s.transitionsFrom().iterator();
+        while (it.hasNext()) {
+            others.add(((Transition)it.next()).toState());
+        }
+
+        it = s.transitionsTo().iterator();
+        while (it.hasNext()) {
+            others.add(((Transition)it.next()).fromState());
+        }
+
+        it = others.iterator();
+        while (it.hasNext()) {
+            this.placeBetween(s, (State)it.next());
+        }
+
+        Map<State, Bundle> bundlesOf = this.bundles.get(s);
+        if (bundlesOf != null) {
+            it = bundlesOf.values().iterator();
+            while (it.hasNext()) {
+                this.indexBundle((Bundle)it.next());
+            }
+        }
+    }
+
+    //Work out afresh the geometry of the transitions between the two states (either way),
+    //as each is bent by an amount that depends on the others, and add or remove their bundle.
+    private void indexBetween(State a, State b) {
+        boolean present = this.placeBetween(a, b);
+        if (a != b) {
+            this.updateBundle(a, b, present);
+        }
+    }
+
+    //Work out afresh and index the geometry of the transitions between the two states (either way),
+    //finding and sorting the transitions each way once. Return true if there are any.
+    private boolean placeBetween(State a, State b) {
+        java.util.List<Transition> ab = this.between(a, b);
+        if (a == b) {
+            this.place(ab, false);
+            return !ab.isEmpty();
+        }
+
+        java.util.List<Transition> ba = this.between(b, a);
+        this.place(ab, !ba.isEmpty());
+        this.place(ba, !ab.isEmpty());
+        return !ab.isEmpty() || !ba.isEmpty();
+    }
+
+    //Work out the geometry of each of the transitions between two states, in event order,
+    //and index it; reverse is true if there are transitions the other way.
+    private void place(java.util.List<Transition> between, boolean reverse) {
+        for (int i = 0; i < between.size(); i++) {
+            Transition t = between.get(i);
+            this.edges.put(t, EdgeGeometry.of(t, i, between.size(), reverse));
+            this.indexTransition(t);
+        }
+    }
+
+    //Add the bundle of the two (different) states if there are transitions between them, or remove it if not.
+    private void updateBundle(State a, State b, boolean present) {
+        Map<State, Bundle> bundlesOfA = this.bundles.get(a);
+        Bundle bundle = bundlesOfA == null ? null : bundlesOfA.get(b);
+        if (present && bundle == null) {
+            bundle = new Bundle(a, b);
+            this.linkBundle(a, b, bundle);
+            this.linkBundle(b, a, bundle);
+            this.indexBundle(bundle);
+        }
+
+        else if (!present && bundle != null) {
+            this.repaintBox(this.bundleIndex.bounds(bundle));
+            this.bundleIndex.remove(bundle);
+            this.linkBundle(a, b, null);
+            this.linkBundle(b, a, null);
+        }
+    }
+
+    //Record the bundle as the one between the states, or (bundle is null) forget it.
+    private void linkBundle(State from, State to, Bundle bundle) {
+        Map<State, Bundle> bundlesOf = this.bundles.get(from);
+        if (bundle != null) {
+            if (bundlesOf == null) {
+                bundlesOf = new IdentityHashMap<State, Bundle>(4);
+                this.bundles.put(from, bundlesOf);
+            }
+
+            bundlesOf.put(to, bundle);
+        }
+
+        else if (bundlesOf != null) {
+            bundlesOf.remove(to);
+            if (bundlesOf.isEmpty()) {
+                this.bundles.remove(from);
+            }
+        }
+    }
+
+    //Index the box around the bundle's line, and repaint where it was and where it is.
+    private void indexBundle(Bundle bundle) {
+        this.repaintBox(this.bundleIndex.bounds(bundle));
+        int xa = bundle.a.getXpos() + StateIcon.CENTRE_X;
+        int ya = bundle.a.getYpos() + StateIcon.CENTRE_Y;
+        int xb = bundle.b.getXpos() + StateIcon.CENTRE_X;
+        int yb = bundle.b.getYpos() + StateIcon.CENTRE_Y;
+        this.bundleIndex.put(bundle, Math.min(xa, xb), Math.min(ya, yb), Math.abs(xb - xa) + 1, Math.abs(yb - ya) + 1);
+        this.repaintBox(this.bundleIndex.bounds(bundle));
+    }
+
+    //Return the transitions from one state of the FSA to another, in event order,
+    //or none if either state is no longer in the FSA.
+    private java.util.List<Transition> between(State from, State to) {
+        java.util.List<Transition> between = new ArrayList<Transition>();
+        if (this.fsa.getStates().contains(from) && this.fsa.getStates().contains(to)) {
+            between.addAll(this.fsa.findTransition(from, to));
+            if (between.size() > 1) {
+                Collections.sort(between, EVENT_ORDER);
+            }
+        }
+
+        return between;
+    }
+
+    //Return the geometry of the transition.
+    //Every indexed transition has its geometry cached, as it is worked out when it is indexed.
+    private EdgeGeometry edge(Transition t) {
+        EdgeGeometry edge = this.edges.get(t);
+        if (edge == null) {
+            //A transition that is not indexed is drawn as if it were the only one between its states.
+            edge = EdgeGeometry.of(t, 0, 1, false);
+        }
+
+        return edge;
+    }
+
+    //Index the box around the transition's line, and repaint where it was and where it is.
+    private void indexTransition(Transition t) {
+        this.repaintBox(this.transitionIndex.bounds(t));
+        this.putTransition(t);
+        this.repaintBox(this.transitionIndex.bounds(t));
+    }
+
+    //Add the box, if there is one, to the area to repaint at the next frame.
+    private void repaintBox(Rectangle box) {
+        if (box == null) {
+            return;
+        }
+
+        if (this.dirty == null) {
+            this.dirty = new Rectangle(box);
+            this.frame.start();
+        }
+
+        else {
+            this.dirty.add(box);
+        }
+    }
+
+    //Repaint the area changed since the last frame.
+    private void flushDirty() {
+        if (this.dirty != null) {
+            Rectangle r = this.dirty;
+            if (this.canvas) {
+                //Turn the area of the FSA into the area of the panel showing it (with a pixel to spare).
+                int x = (int)Math.floor((r.x - this.viewX) * this.scale) - 1;
+                int y = (int)Math.floor((r.y - this.viewY) * this.scale) - 1;
+                int xEnd = (int)Math.ceil((r.x + r.width - this.viewX) * this.scale) + 1;
+                int yEnd = (int)Math.ceil((r.y + r.height - this.viewY) * this.scale) + 1;
+                r = new Rectangle(x, y, xEnd - x, yEnd - y);
+            }
+
+            this.repaint(r);
+            this.dirty = null;
+        }
+    }
+
+    //Put the box around the transition's arrow and label in the index.
+    private void putTransition(Transition t) {
+        Rectangle bounds = this.edge(t).bounds;
+        this.transitionIndex.put(t, bounds.x, bounds.y, bounds.width, bounds.height);
+    }
+
+    //Add an icon for the state, if it does not have one.
+    private void addIcon(State s) {
+        if (this.icons.containsKey(s)) {
+            return;
+        }
+
+        StateIcon icon = new StateIcon((StateImpl)s);
+        this.add(icon);
+        icon.addMouseListener(this);
+        icon.addMouseMotionListener(this);
+        if (this.selected.contains(s)) {
+            icon.changeSelection();
+        }
+
+        icon.stateHasChanged();
+        this.icons.put(s, icon);
+    }
+
+    //Take the icon off the panel.
+    private void removeIcon(StateIcon icon) {
+        Rectangle bounds = icon.getBounds();
+        this.remove(icon);
+        this.repaintBox(bounds);
+    }
+
+    //Redraw the state's icon where the state now is, if it has one.
+    private void updateIcon(State s) {
+        StateIcon icon = this.icons.get(s);
+        if (icon != null) {
+            icon.stateHasChanged();
         }
     }
 
     //Called whenever the number of transitions in the FSA has changed
+    //Only the transitions added or removed since they were last indexed, and the others
+    //between the same states (which are bent afresh), are indexed again.
     public void transitionsChanged() {
-    	System.out.println("Transitions changed.");
+        //Every indexed transition has its geometry cached.
+        Iterator it = new ArrayList<Transition>(this.edges.keySet()).iterator();
+        while (it.hasNext()) {
+            Transition t = (Transition)it.next();
+            if (!this.fsa.getTransitions().contains(t)) {
+                this.repaintBox(this.transitionIndex.bounds(t));
+                this.transitionIndex.remove(t);
+                this.edges.remove(t);
+                this.indexBetween(t.fromState(), t.toState());
+            }
+        }
+
+        it = this.fsa.getTransitions().iterator();
+        while (it.hasNext()) {
+            Transition t = (Transition)it.next();
+            if (!this.transitionIndex.contains(t)) {
+                this.indexBetween(t.fromState(), t.toState());
+            }
+        }
     }
 
     //Called whenever something about the FSA has changed
     //(other than states or transitions)
     public void otherChanged() {
-    	System.out.println("Something changed.");
+        Iterator it = this.icons.values().iterator();
+        while (it.hasNext()) {
+            ((StateIcon)it.next()).stateHasChanged();
+        }
     }
 
+    //Show another FSA, replacing the icons of the last one.
     public void updateFsa(FsaImpl fsaIn) {
+        //The panel holds nothing but icons.
+        this.removeAll();
+        this.repaint();
+        this.icons.clear();
+        this.selected.clear();
+        this.stateIndex.clear();
+        this.transitionIndex.clear();
+        this.edges.clear();
+        this.bundles.clear();
+        this.bundleIndex.clear();
         this.fsa = fsaIn;
+        this.statesChanged();
     }
 
-    public Set<StateIcon> getIcons() {
-        return this.icons;
+    public Collection<StateIcon> getIcons() {
+        return this.icons.values();
+    }
+
+    //Indicate if the panel draws the states itself, rather than with a StateIcon for each
+    public boolean isCanvas() {
+        return this.canvas;
+    }
+
+    //Draw the states on the panel itself (b is true), or with a StateIcon for each.
+    public void setCanvas(boolean b) {
+        if (this.canvas == b) {
+            return;
+        }
+
+        this.canvas = b;
+        if (b) {
+            this.removeAll();
+            this.icons.clear();
+            this.repaint();
+        }
+
+        else {
+            //Icons cannot be zoomed or panned.
+            this.setView(0, 0, 1);
+            this.statesChanged();
+        }
+    }
+
+    //Return the scale the canvas is drawn at
+    public double getScale() {
+        return this.scale;
+    }
+
+    //Show the canvas with the point (x,y) of the FSA at the panel's top left corner,
+    //at the scale (which is kept between MIN_SCALE and MAX_SCALE).
+    public void setView(double x, double y, double scaleIn) {
+        this.viewX = x;
+        this.viewY = y;
+        this.scale = Math.max(MIN_SCALE, Math.min(MAX_SCALE, scaleIn));
+        this.repaint();
+    }
+
+    //Zoom the canvas by the factor, keeping the point (x,y) of the panel over the same point of the FSA.
+    public void zoom(double factor, int x, int y) {
+        double newScale = Math.max(MIN_SCALE, Math.min(MAX_SCALE, this.scale * factor));
+        double fsaX = x / this.scale + this.viewX;
+        double fsaY = y / this.scale + this.viewY;
+        this.setView(fsaX - x / newScale, fsaY - y / newScale, newScale);
+    }
+
+    //Return the point of the FSA under the mouse.
+    private Point toFsa(MouseEvent e) {
+        //Work in the panel's coordinates, whichever icon the event came from.
+        Point p = SwingUtilities.convertPoint(e.getComponent(), e.getPoint(), this);
+        if (this.canvas) {
+            p.x = (int)Math.floor(p.x / this.scale + this.viewX);
+            p.y = (int)Math.floor(p.y / this.scale + this.viewY);
+        }
+
+        return p;
+    }
+
+    //Zoom the canvas in or out about the mouse as the wheel turns.
+    public void mouseWheelMoved(MouseWheelEvent e) {
+        if (this.canvas && e.getComponent() == this) {
+            this.zoom(Math.pow(1.1, -e.getPreciseWheelRotation()), e.getX(), e.getY());
+        }
     }
 
     public void mouseEntered(MouseEvent e) {
@@ -108,32 +593,39 @@ public class FsaPanel extends JPanel implements FsaListener, MouseListener, Mous
 
     public void mousePressed(MouseEvent e) {
         if (this.state == 0) {
-            if (e.getComponent().getClass().getName().equals("FsaPanel")) {
-                Iterator it = this.icons.iterator();
-                while (it.hasNext()) {
-                    StateIcon icon = (StateIcon)it.next();
-                    if (icon.checkSelected()) {
-                        icon.changeSelection();
-                    }
-                }
-
+            //Pan the canvas by dragging with any button but the left.
+            if (this.canvas && !SwingUtilities.isLeftMouseButton(e)) {
                 this.x0 = e.getX();
                 this.y0 = e.getY();
+                this.state = 3;
+                return;
+            }
+
+            Point p = this.toFsa(e);
+            this.x0 = p.x;
+            this.y0 = p.y;
+            this.x1 = p.x;
+            this.y1 = p.y;
+            State pressed;
+            if (e.getComponent() instanceof StateIcon) {
+                pressed = ((StateIcon)e.getComponent()).getState();
+            }
+
+            else {
+                //On the canvas, find the state drawn at the point.
+                pressed = this.canvas ? this.stateAt(p.x, p.y) : null;
+            }
+
+            if (pressed == null) {
+                this.clearSelection();
                 this.state = 1;
             }
 
-            else if (e.getComponent().getClass().getName().equals("StateIcon")) {
+            else {
                 this.state = 2;
-                if (!((StateIcon)e.getComponent()).checkSelected()) {
-                    Iterator it = this.icons.iterator();
-                    while (it.hasNext()) {
-                        StateIcon icon = (StateIcon)it.next();
-                        if (icon.checkSelected()) {
-                            icon.changeSelection();
-                        }
-                    }
-
-                    ((StateIcon)e.getComponent()).changeSelection();
+                if (!this.selected.contains(pressed)) {
+                    this.clearSelection();
+                    this.select(pressed, true);
                 }
             }
         }
@@ -146,10 +638,10 @@ public class FsaPanel extends JPanel implements FsaListener, MouseListener, Mous
     public void mouseReleased(MouseEvent e) {
         if (this.state == 1) {
             this.state = 0;
-            this.repaint(0, 0, 600, 600);
+            this.repaintBox(this.band());
         }
 
-        else if (this.state == 2) {
+        else if (this.state == 2 || this.state == 3) {
             this.state = 0;
         }
     }
@@ -159,70 +651,275 @@ public class FsaPanel extends JPanel implements FsaListener, MouseListener, Mous
     }
 
     public void mouseDragged(MouseEvent e) {
+        if (this.state == 3) {
+            this.setView(this.viewX - (e.getX() - this.x0) / this.scale, this.viewY - (e.getY() - this.y0) / this.scale, this.scale);
+            this.x0 = e.getX();
+            this.y0 = e.getY();
+            return;
+        }
+
+        Point p = this.toFsa(e);
         if (this.state == 1) {
-            this.x1 = e.getX();
-            this.y1 = e.getY();
-            Rectangle rect;
-            if (x1 - x0 < 0) {
-                if (y1 - y0 < 0) {
-                  rect = new Rectangle(this.x1, this.y1, Math.abs(this.x1 - this.x0), Math.abs(this.y1 - this.y0));
+            //Repaint where the band was and where it is.
+            this.repaintBox(this.band());
+            this.x1 = p.x;
+            this.y1 = p.y;
+            this.repaintBox(this.band());
+            //Select the states whose boxes meet the band, and only those.
+            Rectangle band = this.band();
+            Set<State> hits = Collections.newSetFromMap(new IdentityHashMap<State, Boolean>());
+            this.stateIndex.query(band.x, band.y, band.width, band.height, hits);
+            Iterator it = new ArrayList<State>(this.selected).iterator();
+            while (it.hasNext()) {
+                State s = (State)it.next();
+                if (!hits.contains(s)) {
+                    this.select(s, false);
                 }
+            }
 
-                else {
-                    rect = new Rectangle(this.x1, this.y0, Math.abs(this.x1 - this.x0), this.y1 - this.y0);
-                }
+            it = hits.iterator();
+            while (it.hasNext()) {
+                this.select((State)it.next(), true);
             }
+        }
 
-            else {
-                if (y1 - y0 < 0) {
-                  rect = new Rectangle(this.x0, this.y1, this.x1 - this.x0, Math.abs(this.y1 - this.y0));
-                }
+        else if (this.state == 2) {
+            //Move the selected states by as far as the mouse has moved since the last event.
+            int dx = p.x - this.x0;
+            int dy = p.y - this.y0;
+            this.x0 = p.x;
+            this.y0 = p.y;
+            Iterator it = this.selected.iterator();
+            while (it.hasNext()) {
+                ((State)it.next()).moveBy(dx, dy);
+            }
+        }
+    }
 
-                else {
-                    rect = new Rectangle(this.x0, this.y0, this.x1 - this.x0, this.y1 - this.y0);
+    //Return the state whose circle (or final ring) is at the point of the FSA, or null if there is none.
+    //Where circles overlap, return the one the canvas draws on top (the last in PAINT_ORDER).
+    public State stateAt(int x, int y) {
+        java.util.List<State> boxes = new ArrayList<State>();
+        this.stateIndex.query(x, y, 1, 1, boxes);
+        State top = null;
+        Iterator it = boxes.iterator();
+        while (it.hasNext()) {
+            State s = (State)it.next();
+            long dx = x - (s.getXpos() + StateIcon.CENTRE_X);
+            long dy = y - (s.getYpos() + StateIcon.CENTRE_Y);
+            long r = s.isFinal() ? StateIcon.RADIUS + StateIcon.FINAL_GAP : StateIcon.RADIUS;
+            if (dx * dx + dy * dy <= r * r && (top == null || PAINT_ORDER.compare(s, top) > 0)) {
+                top = s;
+            }
+        }
+
+        return top;
+    }
+
+    //Return the selected states
+    public Set<State> getSelectedStates() {
+        return Collections.unmodifiableSet(this.selected);
+    }
+
+    //Select (b is true) or deselect the state.
+    public void select(State s, boolean b) {
+        if (b ? !this.selected.add(s) : !this.selected.remove(s)) {
+            return;
+        }
+
+        StateIcon icon = this.icons.get(s);
+        if (icon != null && icon.checkSelected() != b) {
+            icon.changeSelection();
+        }
+
+        this.repaintBox(this.stateIndex.bounds(s));
+    }
+
+    //Deselect every selected state.
+    public void clearSelection() {
+        Iterator it = new ArrayList<State>(this.selected).iterator();
+        while (it.hasNext()) {
+            this.select((State)it.next(), false);
+        }
+    }
+
+    //Return the rubber band, from where the mouse was pressed to where it is now.
+    private Rectangle band() {
+        return new Rectangle(Math.min(this.x0, this.x1), Math.min(this.y0, this.y1), Math.abs(this.x1 - this.x0), Math.abs(this.y1 - this.y0));
+    }
+
+    //Return the time the last paint of the panel (and its icons) took, in nanoseconds
+    public long getLastFrameNanos() {
+        return this.lastFrameNanos;
+    }
+
+    //Return the longest time a paint has taken since the frame times were reset, in nanoseconds
+    public long getMaxFrameNanos() {
+        return this.maxFrameNanos;
+    }
+
+    //Return the mean time a paint has taken since the frame times were reset, in nanoseconds
+    public long getMeanFrameNanos() {
+        return this.frameCount == 0 ? 0 : this.totalFrameNanos / this.frameCount;
+    }
+
+    //Return the number of paints since the frame times were reset
+    public int getFrameCount() {
+        return this.frameCount;
+    }
+
+    //Start timing paints afresh.
+    public void resetFrameTimes() {
+        this.frameCount = 0;
+        this.lastFrameNanos = 0;
+        this.maxFrameNanos = 0;
+        this.totalFrameNanos = 0;
+    }
+
+    //Paint the panel and its icons, and record the time taken.
+    //At 60 frames a second, a frame must take under FRAME_MILLIS.
+    public void paint(Graphics g) {
+        long start = System.nanoTime();
+        super.paint(g);
+        this.lastFrameNanos = System.nanoTime() - start;
+        this.maxFrameNanos = Math.max(this.maxFrameNanos, this.lastFrameNanos);
+        this.totalFrameNanos += this.lastFrameNanos;
+        this.frameCount++;
+    }
+
+    public Dimension getPreferredSize() {
+        return new Dimension(600, 570);
+    }
+
+    protected void paintComponent(Graphics g) {
+        super.paintComponent(g);
+        //Draw in the FSA's coordinates, as the canvas is zoomed and panned.
+        Graphics2D g2 = (Graphics2D)g.create();
+        if (this.canvas) {
+            g2.scale(this.scale, this.scale);
+            g2.translate(-this.viewX, -this.viewY);
+        }
+
+        //Only what meets the clip is drawn, so the time taken depends on what is on screen,
+        //not on the size of the FSA.
+        Rectangle clip = g2.getClipBounds();
+        if (clip == null) {
+            clip = new Rectangle((int)Math.floor(this.viewX), (int)Math.floor(this.viewY),
+                (int)Math.ceil(this.getWidth() / this.scale) + 1, (int)Math.ceil(this.getHeight() / this.scale) + 1);
+        }
+
+        if (this.canvas && this.scale < DOT_SCALE) {
+            this.paintDots(g, clip);
+            g2.dispose();
+            return;
+        }
+
+        boolean labelled = !this.canvas || this.scale >= LABEL_SCALE;
+        boolean bundled = this.canvas && this.scale < BUNDLE_SCALE;
+        //Draw the transitions under the states.
+        g2.setColor(Color.BLACK);
+        Iterator it;
+        if (bundled) {
+            java.util.List<Bundle> lines = new ArrayList<Bundle>();
+            this.bundleIndex.query(clip.x, clip.y, clip.width, clip.height, lines);
+            it = lines.iterator();
+            while (it.hasNext()) {
+                Bundle bundle = (Bundle)it.next();
+                g2.drawLine(bundle.a.getXpos() + StateIcon.CENTRE_X, bundle.a.getYpos() + StateIcon.CENTRE_Y,
+                    bundle.b.getXpos() + StateIcon.CENTRE_X, bundle.b.getYpos() + StateIcon.CENTRE_Y);
+            }
+        }
+
+        else {
+            java.util.List<Transition> transitions = new ArrayList<Transition>();
+            this.transitionIndex.query(clip.x, clip.y, clip.width, clip.height, transitions);
+            it = transitions.iterator();
+            while (it.hasNext()) {
+                EdgeGeometry edge = this.edge((Transition)it.next());
+                g2.draw(edge.path);
+                g2.fill(edge.arrow);
+                if (labelled) {
+                    g2.drawString(edge.label, edge.labelX, edge.labelY);
                 }
             }
+        }
 
-            Component[] components = this.getComponents();
-            for (int i = 0; i < components.length; i++) {
-                if (rect.intersects(components[i].getBounds())) {
-                    if (!((StateIcon)components[i]).checkSelected()) {
-                        ((StateIcon)components[i]).changeSelection();
+        //On the canvas, draw the states as their icons would.
+        if (this.canvas) {
+            java.util.List<State> states = new ArrayList<State>();
+            this.stateIndex.query(clip.x, clip.y, clip.width, clip.height, states);
+            Collections.sort(states, PAINT_ORDER);
+            it = states.iterator();
+            while (it.hasNext()) {
+                State s = (State)it.next();
+                if (bundled) {
+                    int x = s.getXpos() + StateIcon.CENTRE_X - StateIcon.RADIUS;
+                    int y = s.getYpos() + StateIcon.CENTRE_Y - StateIcon.RADIUS;
+                    if (this.selected.contains(s)) {
+                        g2.fillRect(x, y, 2 * StateIcon.RADIUS, 2 * StateIcon.RADIUS);
+                    }
+
+                    else {
+                        g2.drawRect(x, y, 2 * StateIcon.RADIUS, 2 * StateIcon.RADIUS);
                     }
                 }
 
                 else {
-                    if (((StateIcon)components[i]).checkSelected()) {
-                        ((StateIcon)components[i]).changeSelection();
-                    }
+                    g2.translate(s.getXpos(), s.getYpos());
+                    StateIcon.paintState(g2, s, this.selected.contains(s), labelled);
+                    g2.translate(-s.getXpos(), -s.getYpos());
                 }
             }
+        }
 
-            this.repaint(0, 0, 600, 600);
+        if (this.state == 1) {
+            Rectangle band = this.band();
+            g2.setColor(Color.BLUE);
+            g2.fillRect(band.x, band.y, band.width, band.height);
         }
 
-        else if (this.state == 2) {
-            this.x1 = e.getX();
-            this.y1 = e.getY();
-            Iterator it = this.icons.iterator();
-            while (it.hasNext()) {
-                StateIcon icon = (StateIcon)it.next();
-                if (icon.checkSelected()) {
-                    icon.moveBy(this.x1 - this.x0, this.y1 - this.y0);
-                }
+        g2.dispose();
+    }
+
+    //Draw each pixel of the clip (in the FSA's coordinates) that holds the centre of a state as a dot,
+    //blue if it holds a selected state. Each state only sets its pixel in an image the size of the panel,
+    //which is then drawn at once, so the time taken depends little on the number of states.
+    private void paintDots(Graphics g, Rectangle clip) {
+        int width = this.getWidth();
+        int height = this.getHeight();
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+
+        if (this.dots == null || this.dots.getWidth() != width || this.dots.getHeight() != height) {
+            this.dots = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        }
+
+        int[] pixels = ((DataBufferInt)this.dots.getRaster().getDataBuffer()).getData();
+        Arrays.fill(pixels, 0);
+        java.util.List<State> states = new ArrayList<State>();
+        this.stateIndex.query(clip.x, clip.y, clip.width, clip.height, states);
+        Iterator it = states.iterator();
+        while (it.hasNext()) {
+            State s = (State)it.next();
+            int x = (int)Math.floor((s.getXpos() + StateIcon.CENTRE_X - this.viewX) * this.scale);
+            int y = (int)Math.floor((s.getYpos() + StateIcon.CENTRE_Y - this.viewY) * this.scale);
+            if (x >= 0 && y >= 0 && x < width && y < height && pixels[y * width + x] != SELECTED_DOT) {
+                pixels[y * width + x] = this.selected.contains(s) ? SELECTED_DOT : DOT;
             }
         }
-    }
 
-    public Dimension getPreferredSize() {
-        return new Dimension(600, 570);
+        g.drawImage(this.dots, 0, 0, null);
     }
 
-    protected void paintComponent(Graphics g) {
-        super.paintComponent(g);
-        if (this.state == 1) {
-            g.setColor(Color.BLUE);
-            g.fillRect(this.x0, this.y0, this.x1 - this.x0, this.y1 - this.y0);
+    //All the transitions between two different states, either way, drawn as one line below BUNDLE_SCALE.
+    private static class Bundle {
+        private final State a;
+        private final State b;
+
+        private Bundle(State aIn, State bIn) {
+            this.a = aIn;
+            this.b = bIn;
         }
     }
 }
\ No newline at end of file
@@ -2,14 +2,11 @@ import java.io.*;
 import java.util.*;
 
 public class FsaReaderWriter implements FsaIo {
-	private Set<String> states; 
-    private int lineNr;
+    //A reader/writer holds no state between calls: each read keeps its own ReadContext.
+    //So one instance can read any number of files, and can be shared between threads
+    //reading different files into different Fsas at once.
 
 	public FsaReaderWriter() {
-        //states is a list of all state records that have been added.
-		this.states = new HashSet<String>();
-        //lineNr keeps track of which line of input the reader is up to.
-        this.lineNr = 0;
 	}
 
 	//This class handles reading and writing FSA representations as 
@@ -20,79 +17,108 @@ public class FsaReaderWriter implements FsaIo {
     //If an error is detected, throw an exception that indicates the line
     //where the error was detected, and has a suitable text message
     public void read(Reader r, Fsa f) throws IOException, FsaFormatException {
+        //f's listeners are told of the whole read at once, rather than of each record.
+        FsaImpl.beginBatch(f);
+        try {
+            this.readRecords(r, f);
+        }
+
+        finally {
+            FsaImpl.commitBatch(f);
+        }
+    }
+
+    //Read each record from r into f.
+    private void readRecords(Reader r, Fsa f) throws IOException, FsaFormatException {
+        ReadContext context = new ReadContext();
     	BufferedReader br = new BufferedReader(r);
     	String line = br.readLine();
-        this.lineNr++;
+        context.lineNr++;
         //Read the input, line by line.
     	while (line != null) {
             //Remove leading and trailing whitespace
             line = line.trim();
             //If line is empty, skip it.
             if (line.length() > 0) {
-                //State record
-    	       if (line.charAt(0) == 's') {
-    			    this.readState(line, f);
-    		    }
-
-                //Transition record
-    		    else if (line.charAt(0) == 't') {
-    			    this.readTransition(line, f);
-    		    }
-
-                //Initial record
-    		    else if (line.charAt(0) == 'i') {
-    			    this.readInitial(line, f);
-                }
+                try {
+                    //State record
+                    if (line.charAt(0) == 's') {
+                        this.readState(line, f, context);
+                    }
+
+                    //Transition record
+                    else if (line.charAt(0) == 't') {
+                        this.readTransition(line, f, context);
+                    }
+
+                    //Initial record
+                    else if (line.charAt(0) == 'i') {
+                        this.readInitial(line, f, context);
+                    }
+
+                    //Final record
+                    else if (line.charAt(0) == 'f') {
+                        this.readFinal(line, f, context);
+                    }
 
-                //Final record
-                else if (line.charAt(0) == 'f') {
-                    this.readFinal(line, f);
+                    //If none of these, and not a comment, throw an error.
+                    else if (line.charAt(0) != '#') {
+                        throw new FsaFormatException(context.lineNr, "Illegal format");
+                    }
                 }
 
-                //If none of these, and not a comment, throw an error.
-                else if (line.charAt(0) != '#') {
-    				throw new FsaFormatException(this.lineNr, "Illegal format");
+                //The Fsa rejects invalid names and duplicate states or transitions.
+                catch (IllegalArgumentException e) {
+                    throw new FsaFormatException(context.lineNr, "Illegal format");
                 }
             }
 
     		line = br.readLine();
-            this.lineNr++;
+            context.lineNr++;
     	}
     }
 
     //Write a representation of the Fsa, f, to the Writer, w.
     public void write(Writer w, Fsa f) throws IOException {
-    	this.writeStates(w, f);
-        this.writeTransitions(w, f);
-        this.writeInitials(w, f);
-        this.writeFinals(w, f);
+        //The records are built up in one buffer, which is written to w whenever it fills.
+        RecordWriter out = new RecordWriter(w);
+    	this.writeStates(out, f);
+        this.writeTransitions(out, f);
+        this.writeInitials(out, f);
+        this.writeFinals(out, f);
+        out.flush();
     }
 
     //Read a state record.
-    public void readState(String line, Fsa f) throws FsaFormatException {
+    private void readState(String line, Fsa f, ReadContext context) throws FsaFormatException {
         StringTokenizer st = new StringTokenizer(line);
         //A state record must have 4 tokens to be valid.
         if (st.countTokens() != 4) {
-            throw new FsaFormatException(this.lineNr, "Illegal format");
+            throw new FsaFormatException(context.lineNr, "Illegal format");
         }
 
         //Tokenise the line.
         String token = st.nextToken();
         //Check that the "state" token is valid.
+        //(A token too short to check is not valid either)
+        if (token.length() < 5) {
+            throw new FsaFormatException(context.lineNr, "Illegal format");
+        }
+
     	if (token.charAt(1) != 't') {
-    		throw new FsaFormatException(this.lineNr, "Illegal format");
+    		throw new FsaFormatException(context.lineNr, "Illegal format");
     	}
 
     	if (token.charAt(2) != 'a') {
-    		throw new FsaFormatException(this.lineNr, "Illegal format");
+    		throw new FsaFormatException(context.lineNr, "Illegal format");
     	}
 
     	if (token.charAt(3) != 't') {
-    		throw new FsaFormatException(this.lineNr, "Illegal format");
+    		throw new FsaFormatException(context.lineNr, "Illegal format");
     	}
 
     	if (token.charAt(4) != 'e') {
-    		throw new FsaFormatException(this.lineNr, "Illegal format");
+    		throw new FsaFormatException(context.lineNr, "Illegal format");
     	}
 
         //Get the stateName, xPos, and yPos tokens.
@@ -107,12 +133,12 @@ public class FsaReaderWriter implements FsaIo {
             if (!Character.isDigit(xString.charAt(i))) {
                 if (i == 0) {
                     if (xString.charAt(i) != '-') {
-                        throw new FsaFormatException(this.lineNr, "Illegal format");
+                        throw new FsaFormatException(context.lineNr, "Illegal format");
                     }
                 }
 
                 else {
-                    throw new FsaFormatException(this.lineNr, "Illegal format");
+                    throw new FsaFormatException(context.lineNr, "Illegal format");
                 }
             }
         }
@@ -126,12 +152,12 @@ public class FsaReaderWriter implements FsaIo {
             if (!Character.isDigit(yString.charAt(i))) {
                 if (i == 0) {
                     if (yString.charAt(i) != '-') {
-                        throw new FsaFormatException(this.lineNr, "Illegal format");
+                        throw new FsaFormatException(context.lineNr, "Illegal format");
                     }
                 }
 
                 else {
-                    throw new FsaFormatException(this.lineNr, "Illegal format");
+                    throw new FsaFormatException(context.lineNr, "Illegal format");
                 }
             }
         }
@@ -139,53 +165,58 @@ public class FsaReaderWriter implements FsaIo {
     	int yPos = Integer.parseInt(yString);
         //Add the state to the Fsa, and add it to the set of state records added.
     	f.newState(stateName, xPos, yPos);
-        this.states.add(stateName);
+        context.states.add(stateName);
     }
 
     //Read a transition record.
-    public void readTransition(String line, Fsa f) throws FsaFormatException {
+    private void readTransition(String line, Fsa f, ReadContext context) throws FsaFormatException {
         StringTokenizer st = new StringTokenizer(line);
         //A transition record must have 4 tokens.
         if (st.countTokens() != 4) {
-            throw new FsaFormatException(this.lineNr, "Illegal format");
+            throw new FsaFormatException(context.lineNr, "Illegal format");
         }
 
         String token = st.nextToken();
         //Check the "transition" token.
+        //(A token too short to check is not valid either)
+        if (token.length() < 10) {
+            throw new FsaFormatException(context.lineNr, "Illegal format");
+        }
+
     	if (token.charAt(1) != 'r') {
-    		throw new FsaFormatException(this.lineNr, "Illegal format");
+    		throw new FsaFormatException(context.lineNr, "Illegal format");
     	}
 
     	if (token.charAt(2) != 'a') {
-    		throw new FsaFormatException(this.lineNr, "Illegal format");
+    		throw new FsaFormatException(context.lineNr, "Illegal format");
     	}
 
     	if (token.charAt(3) != 'n') {
-    		throw new FsaFormatException(this.lineNr, "Illegal format");
+    		throw new FsaFormatException(context.lineNr, "Illegal format");
     	}
 
     	if (token.charAt(4) != 's') {
-    		throw new FsaFormatException(this.lineNr, "Illegal format");
+    		throw new FsaFormatException(context.lineNr, "Illegal format");
     	}
 
     	if (token.charAt(5) != 'i') {
-    		throw new FsaFormatException(this.lineNr, "Illegal format");
+    		throw new FsaFormatException(context.lineNr, "Illegal format");
     	}
 
     	if (token.charAt(6) != 't') {
-    		throw new FsaFormatException(this.lineNr, "Illegal format");
+    		throw new FsaFormatException(context.lineNr, "Illegal format");
     	}
 
     	if (token.charAt(7) != 'i') {
-    		throw new FsaFormatException(this.lineNr, "Illegal format");
+    		throw new FsaFormatException(context.lineNr, "Illegal format");
     	}
 
     	if (token.charAt(8) != 'o') {
-    		throw new FsaFormatException(this.lineNr, "Illegal format");
+    		throw new FsaFormatException(context.lineNr, "Illegal format");
     	}
 
     	if (token.charAt(9) != 'n') {
-    		throw new FsaFormatException(this.lineNr, "Illegal format");
+    		throw new FsaFormatException(context.lineNr, "Illegal format");
     	}
 
     	String fromString = st.nextToken();
@@ -198,223 +229,265 @@ public class FsaReaderWriter implements FsaIo {
 
     	String toString = st.nextToken();
         //Check that both the fromState and the toState have been defined via record.
-    	boolean fromFound = false;
-    	boolean toFound = false;
-        boolean bothFound = false;
-        Iterator it = this.states.iterator();
-        while (it.hasNext() && bothFound == false) {
-            String nextState = (String)it.next();
-            if (nextState.equals(fromString)) {
-                fromFound = true;
-                if (toFound == true) {
-                    bothFound = true;
-                }
-            }
-
-            else if (nextState.equals(toString)) {
-                toFound = true;
-                if (fromFound == true) {
-                    bothFound = true;
-                }
-            }
-        }
-
+        //(They may be the same state, for a transition that loops back to its state)
         //If they have both been defined, the transition can be added.
-    	if (bothFound == true) {
+    	if (this.findStateRecord(fromString, context) && this.findStateRecord(toString, context)) {
     		State fromState = f.findState(fromString);
     		State toState = f.findState(toString);
     		f.newTransition(fromState, toState, event);
     	}
 
         else {
-            throw new FsaFormatException(this.lineNr, "Illegal format");
+            throw new FsaFormatException(context.lineNr, "Illegal format");
         }
     }
 
     //Read an intial record.
-    public void readInitial(String line, Fsa f) throws FsaFormatException {
+    private void readInitial(String line, Fsa f, ReadContext context) throws FsaFormatException {
         StringTokenizer st = new StringTokenizer(line);
         //An initial record must have 2 tokens.
         if (st.countTokens() != 2) {
-            throw new FsaFormatException(this.lineNr, "Illegal format");
+            throw new FsaFormatException(context.lineNr, "Illegal format");
         }
 
         String token = st.nextToken();
         //Check the "initial" token.
+        //(A token too short to check is not valid either)
+        if (token.length() < 7) {
+            throw new FsaFormatException(context.lineNr, "Illegal format");
+        }
+
     	if (token.charAt(1) != 'n') {
-    		throw new FsaFormatException(this.lineNr, "Illegal format");
+    		throw new FsaFormatException(context.lineNr, "Illegal format");
     	}
 
     	if (token.charAt(2) != 'i') {
-    		throw new FsaFormatException(this.lineNr, "Illegal format");
+    		throw new FsaFormatException(context.lineNr, "Illegal format");
     	}
 
     	if (token.charAt(3) != 't') {
-    		throw new FsaFormatException(this.lineNr, "Illegal format");
+    		throw new FsaFormatException(context.lineNr, "Illegal format");
     	}
 
     	if (token.charAt(4) != 'i') {
-    		throw new FsaFormatException(this.lineNr, "Illegal format");
+    		throw new FsaFormatException(context.lineNr, "Illegal format");
     	}
 
     	if (token.charAt(5) != 'a') {
-    		throw new FsaFormatException(this.lineNr, "Illegal format");
+    		throw new FsaFormatException(context.lineNr, "Illegal format");
     	}
 
     	if (token.charAt(6) != 'l') {
-    		throw new FsaFormatException(this.lineNr, "Illegal format");
+    		throw new FsaFormatException(context.lineNr, "Illegal format");
     	}
 
     	String stateName = st.nextToken();
         //Check that the state has been defined via a record.
-    	if (this.findStateRecord(stateName)) {
+    	if (this.findStateRecord(stateName, context)) {
     		f.findState(stateName).setInitial(true);
     	}
 
         else {
-            throw new FsaFormatException(this.lineNr, "Illegal format");
+            throw new FsaFormatException(context.lineNr, "Illegal format");
         }
     }
 
     //Read a final record.
-    public void readFinal(String line, Fsa f) throws FsaFormatException {
+    private void readFinal(String line, Fsa f, ReadContext context) throws FsaFormatException {
     	StringTokenizer st = new StringTokenizer(line);
         //A final record must have 2 tokens.
         if (st.countTokens() != 2) {
-            throw new FsaFormatException(this.lineNr, "Illegal format");
+            throw new FsaFormatException(context.lineNr, "Illegal format");
         }
 
         String token = st.nextToken();
         //Check the "final" token.
+        //(A token too short to check is not valid either)
+        if (token.length() < 5) {
+            throw new FsaFormatException(context.lineNr, "Illegal format");
+        }
+
     	if (token.charAt(1) != 'i') {
-    		throw new FsaFormatException(this.lineNr, "Illegal format");
+    		throw new FsaFormatException(context.lineNr, "Illegal format");
     	}
 
     	if (token.charAt(2) != 'n') {
-    		throw new FsaFormatException(this.lineNr, "Illegal format");
+    		throw new FsaFormatException(context.lineNr, "Illegal format");
     	}
 
     	if (token.charAt(3) != 'a') {
-    		throw new FsaFormatException(this.lineNr, "Illegal format");
+    		throw new FsaFormatException(context.lineNr, "Illegal format");
     	}
 
     	if (token.charAt(4) != 'l') {
-    		throw new FsaFormatException(this.lineNr, "Illegal format");
+    		throw new FsaFormatException(context.lineNr, "Illegal format");
     	}
 
     	String stateName = st.nextToken();
         //Check that the state has been defined via a record.
-    	if (this.findStateRecord(stateName)) {
+    	if (this.findStateRecord(stateName, context)) {
     		f.findState(stateName).setFinal(true);
     	}
 
         else {
-            throw new FsaFormatException(this.lineNr, "Illegal format");
+            throw new FsaFormatException(context.lineNr, "Illegal format");
         }
     }
 
     //Write state records for states in the Fsa.
-    public void writeStates(Writer w, Fsa f) throws IOException {
+    private void writeStates(RecordWriter out, Fsa f) throws IOException {
         //Get all states from the Fsa.
         Iterator it = f.getStates().iterator();
         while (it.hasNext()) {
             State nextState = (State)it.next();
-            //Convert the state to a record.
-            String record = "state ";
-            record += nextState.getName();
-            record += " ";
-            record += nextState.getXpos();
-            record += " ";
-            record += nextState.getYpos();
-            record += "\n";
-            //Write the record to the writer.
-            w.write(record);
+            //Write the state as a record.
+            out.append("state ");
+            out.append(nextState.getName());
+            out.append(' ');
+            out.append(nextState.getXpos());
+            out.append(' ');
+            out.append(nextState.getYpos());
+            out.append('\n');
         }
     }
 
     //Write transition records for transitions in the Fsa.
-    public void writeTransitions(Writer w, Fsa f) throws IOException {
-        //Transitions are a bit complicated.
-        //There is not a simple way to get all transitions of an Fsa.
-        //Instead, check every combination of states, and check for a set of transitions connecting them.
-        Iterator firstStates = f.getStates().iterator();
-        while (firstStates.hasNext()) {
-            State firstState = (State)firstStates.next();
-            Iterator secondStates = f.getStates().iterator();
-            while (secondStates.hasNext()) {
-                State secondState = (State)secondStates.next();
-                //TransitionIt represents the set of transitions between firstState and lastState.
-                Iterator transitionIt = f.findTransition(firstState, secondState).iterator();
-                while (transitionIt.hasNext()) {
-                    Transition nextTransition = (Transition)transitionIt.next();
-                    //Convert the transition to a record.
-                    String record = "transition ";
-                    record += nextTransition.fromState().getName();
-                    record += " ";
-                    //If the eventName token is null it represents an epislon transition.
-                    //Records interpret epsilon transitions as "?".
-                    if (nextTransition.eventName() == null) {
-                        record += "?";
-                    }
-
-                    //If the eventName token is "" it represents an epislon transition.
-                    //Records interpret epsilon transitions as "?".
-                    else if (nextTransition.eventName().equals("")) {
-                        record += "?";
-                    }
-
-                    else {
-                        record += nextTransition.eventName();
-                    }
+    private void writeTransitions(RecordWriter out, Fsa f) throws IOException {
+        //Get all transitions from the Fsa.
+        Iterator it = f.getTransitions().iterator();
+        while (it.hasNext()) {
+            Transition nextTransition = (Transition)it.next();
+            //Write the transition as a record.
+            out.append("transition ");
+            out.append(nextTransition.fromState().getName());
+            out.append(' ');
+            //If the eventName token is null or "" it represents an epislon transition.
+            //Records interpret epsilon transitions as "?".
+            String event = nextTransition.eventName();
+            if (event == null || event.length() == 0) {
+                out.append('?');
+            }
 
-                    record += " ";
-                    record += nextTransition.toState().getName();
-                    record += "\n";
-                    w.write(record);
-                }
+            else {
+                out.append(event);
             }
+
+            out.append(' ');
+            out.append(nextTransition.toState().getName());
+            out.append('\n');
         }
     }
 
     //Write initial records for initial states in the Fsa.
-    public void writeInitials(Writer w, Fsa f) throws IOException {
+    private void writeInitials(RecordWriter out, Fsa f) throws IOException {
         //Get the initial states from the Fsa.
         Iterator it = f.getInitialStates().iterator();
         while (it.hasNext()) {
-            State nextState = (State)it.next();
-            //Convert the initial state to a record.
-            String record = "initial ";
-            record += nextState.getName();
-            record += "\n";
-            w.write(record);
+            out.append("initial ");
+            out.append(((State)it.next()).getName());
+            out.append('\n');
         }
     }
 
     //Write final records for final states in the Fsa.
-    public void writeFinals(Writer w, Fsa f) throws IOException {
+    private void writeFinals(RecordWriter out, Fsa f) throws IOException {
         //Get the final states from the Fsa.
         Iterator it = f.getFinalStates().iterator();
         while (it.hasNext()) {
-            State nextState = (State)it.next();
-            //Convert the final state to a record.
-            String record = "final ";
-            record += nextState.getName();
-            record += "\n";
-            w.write(record);
+            out.append("final ");
+            out.append(((State)it.next()).getName());
+            out.append('\n');
         }
     }
 
-    //Check if a state record has been read by the reader.
-    public boolean findStateRecord(String stateName) {
-        //Get the set of read state records.
-        Iterator it = this.states.iterator();
-        while (it.hasNext()) {
-            //If the state record had the same name as stateName, the state record has been read.
-            if (((String)it.next()).equals(stateName)) {
-                return true;
+    //Check if a state record has been read by this read.
+    private boolean findStateRecord(String stateName, ReadContext context) {
+        //Look the name up in the set of read state records.
+        return context.states.contains(stateName);
+    }
+
+    //The state of one read: the line it is up to, and the names of the state records read so far.
+    private static class ReadContext {
+        private int lineNr;
+        private final Set<String> states;
+
+        private ReadContext() {
+            //lineNr keeps track of which line of input the reader is up to.
+            this.lineNr = 0;
+            //states holds the names of all state records that have been added.
+            this.states = new HashSet<String>();
+        }
+    }
+
+    //Builds records in a reusable char buffer, writing the buffer to a Writer whenever it fills,
+    //so records are written without building a String for each one.
+    private static class RecordWriter {
+        private final Writer w;
+        private final char[] buf;
+        private int pos;
+
+        private RecordWriter(Writer wIn) {
+            this.w = wIn;
+            this.buf = new char[8192];
+            this.pos = 0;
+        }
+
+        private void append(char c) throws IOException {
+            if (this.pos == this.buf.length) {
+                this.flush();
+            }
+
+            this.buf[this.pos++] = c;
+        }
+
+        private void append(String str) throws IOException {
+            int length = str.length();
+            int start = 0;
+            while (start < length) {
+                if (this.pos == this.buf.length) {
+                    this.flush();
+                }
+
+                int count = Math.min(length - start, this.buf.length - this.pos);
+                str.getChars(start, start + count, this.buf, this.pos);
+                this.pos += count;
+                start += count;
+            }
+        }
+
+        //Append the decimal digits of the number.
+        private void append(int number) throws IOException {
+            //An int has at most 11 characters, including the sign.
+            if (this.buf.length - this.pos < 11) {
+                this.flush();
+            }
+
+            long value = number;
+            if (value < 0) {
+                this.buf[this.pos++] = '-';
+                value = -value;
             }
+
+            //Write the digits backwards from the end of the number.
+            int end = this.pos;
+            long rest = value;
+            do {
+                end++;
+                rest /= 10;
+            }
+            while (rest > 0);
+            int digit = end;
+            do {
+                this.buf[--digit] = (char)('0' + value % 10);
+                value /= 10;
+            }
+            while (value > 0);
+            this.pos = end;
         }
 
-    	return false;
+        private void flush() throws IOException {
+            this.w.write(this.buf, 0, this.pos);
+            this.pos = 0;
+        }
     }
 }
\ No newline at end of file
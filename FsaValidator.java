@@ -0,0 +1,400 @@
+import java.io.*;
+import java.nio.*;
+import java.util.*;
+
+public class FsaValidator {
+    //Checks FSA files without building an Fsa, for checking many files quickly.
+    //The file is scanned as MappedFsaReader reads it (memory-mapped, with the same keywords as FsaReaderWriter),
+    //and every record is checked as FsaImpl would check it:
+    //  keywords and number of fields, state and event names, coordinates,
+    //  duplicate states and transitions, and that every state is defined before it is used.
+    //Unlike a reader, it does not stop at the first error, but reports every error with its line number,
+    //along with counts of the records in the file.
+    //Only state and event names are kept (as bytes), with a number for each, so little is allocated
+    //beyond the names themselves.
+    //A state whose name is valid is defined even if the rest of its record is not,
+    //so that one bad coordinate does not also make every use of the state an error.
+    //Can be run over files from the command line: java FsaValidator file...
+    public static final int DEFAULT_MAX_ERRORS = 1000;
+
+    private final int maxErrors;
+
+    public FsaValidator() {
+        this(DEFAULT_MAX_ERRORS);
+    }
+
+    //Keep at most maxErrors errors in each report (the rest are still counted).
+    public FsaValidator(int maxErrorsIn) {
+        this.maxErrors = maxErrorsIn;
+    }
+
+    //Check the file, and return a report of its errors and records.
+    public Report validate(File file) throws IOException {
+        Scan scan = new Scan(this.maxErrors);
+        try {
+            scan.scan(file);
+        }
+
+        catch (FsaFormatException e) {
+            //Only a line too long to map stops the scan.
+            scan.report.error(e);
+        }
+
+        scan.report.lineCount = scan.lineNr;
+        return scan.report;
+    }
+
+    //Check each file named, and print its errors (as file:line:0:message) and a summary.
+    //Exits with status 1 if any file has errors.
+    public static void main(String[] args) throws IOException {
+        FsaValidator validator = new FsaValidator();
+        boolean valid = true;
+        for (int i = 0; i < args.length; i++) {
+            Report report = validator.validate(new File(args[i]));
+            Iterator it = report.getErrors().iterator();
+            while (it.hasNext()) {
+                System.out.println(args[i] + ":" + it.next());
+            }
+
+            System.out.println(args[i] + ": " + report);
+            valid = valid && report.isValid();
+        }
+
+        if (!valid) {
+            System.exit(1);
+        }
+    }
+
+    //The result of checking one file: its errors, and the number of each kind of record.
+    public static class Report {
+        private final int maxErrors;
+        private final List<FsaFormatException> errors;
+        private int errorCount;
+        private int lineCount;
+        private int stateCount;
+        private int transitionCount;
+        private int initialCount;
+        private int finalCount;
+
+        private Report(int maxErrorsIn) {
+            this.maxErrors = maxErrorsIn;
+            this.errors = new ArrayList<FsaFormatException>();
+        }
+
+        private void error(FsaFormatException e) {
+            this.errorCount++;
+            if (this.errors.size() < this.maxErrors) {
+                this.errors.add(e);
+            }
+        }
+
+        //Indicate if the file has no errors
+        public boolean isValid() {
+            return this.errorCount == 0;
+        }
+
+        //Return the errors found, in line order (at most the validator's maxErrors of them)
+        public List<FsaFormatException> getErrors() {
+            return Collections.unmodifiableList(this.errors);
+        }
+
+        //Return the number of errors found
+        public int getErrorCount() {
+            return this.errorCount;
+        }
+
+        //Return the number of lines in the file
+        public int getLineCount() {
+            return this.lineCount;
+        }
+
+        //Return the number of states defined
+        public int getStateCount() {
+            return this.stateCount;
+        }
+
+        //Return the number of valid transition records
+        public int getTransitionCount() {
+            return this.transitionCount;
+        }
+
+        //Return the number of valid initial records
+        public int getInitialCount() {
+            return this.initialCount;
+        }
+
+        //Return the number of valid final records
+        public int getFinalCount() {
+            return this.finalCount;
+        }
+
+        public String toString() {
+            return this.lineCount + " lines, " + this.stateCount + " states, " + this.transitionCount + " transitions, "
+                + this.initialCount + " initial, " + this.finalCount + " final, " + this.errorCount + " errors";
+        }
+    }
+
+    //The state of one check: the report, and the names and transitions defined so far.
+    private static class Scan extends LineScanner {
+        private final Report report;
+        private final RecordTokenizer tokens;
+        //Each state and event name maps to its number.
+        private final NameTable states;
+        private final NameTable events;
+        private final TransitionSet transitions;
+
+        private Scan(int maxErrors) {
+            this.report = new Report(maxErrors);
+            this.tokens = new RecordTokenizer();
+            this.states = new NameTable();
+            this.events = new NameTable();
+            this.transitions = new TransitionSet();
+        }
+
+        //Check the line buf[start..end-1].
+        void line(ByteBuffer buf, int start, int end) {
+            int record;
+            try {
+                record = this.tokens.record(buf, start, end, this.lineNr);
+            }
+
+            catch (FsaFormatException e) {
+                this.report.error(e);
+                return;
+            }
+
+            if (record == RecordTokenizer.STATE) {
+                this.state(buf);
+            }
+
+            else if (record == RecordTokenizer.TRANSITION) {
+                this.transition(buf);
+            }
+
+            else if (record == RecordTokenizer.INITIAL) {
+                if (this.stateId(buf, 1) >= 0) {
+                    this.report.initialCount++;
+                }
+            }
+
+            else if (record == RecordTokenizer.FINAL) {
+                if (this.stateId(buf, 1) >= 0) {
+                    this.report.finalCount++;
+                }
+            }
+        }
+
+        //Check a state record, and define its state if the name is valid and new.
+        private void state(ByteBuffer buf) {
+            int start = this.tokens.start(1);
+            int end = this.tokens.end(1);
+            if (!isStateName(buf, start, end)) {
+                this.error("Invalid state name");
+                return;
+            }
+
+            if (this.states.get(buf, start, end) != null) {
+                this.error("Duplicate state");
+                return;
+            }
+
+            this.states.put(buf, start, end, this.report.stateCount);
+            this.report.stateCount++;
+            try {
+                this.tokens.number(2, this.lineNr);
+                this.tokens.number(3, this.lineNr);
+            }
+
+            catch (FsaFormatException e) {
+                this.error("Invalid coordinate");
+            }
+        }
+
+        //Check a transition record.
+        private void transition(ByteBuffer buf) {
+            //Only the first error of the record is reported.
+            int from = this.stateId(buf, 1);
+            if (from < 0) {
+                return;
+            }
+
+            int to = this.stateId(buf, 3);
+            if (to < 0) {
+                return;
+            }
+
+            int event = this.eventId(buf, 2);
+            if (event == Integer.MIN_VALUE) {
+                return;
+            }
+
+            if (!this.transitions.add(from, to, event)) {
+                this.error("Duplicate transition");
+                return;
+            }
+
+            this.report.transitionCount++;
+        }
+
+        //Return the number of the state named by the token, or -1 (reporting an error)
+        //if it has not been defined on an earlier line.
+        private int stateId(ByteBuffer buf, int token) {
+            Integer id = (Integer)this.states.get(buf, this.tokens.start(token), this.tokens.end(token));
+            if (id == null) {
+                this.error("Undefined state");
+                return -1;
+            }
+
+            return id;
+        }
+
+        //Return the number of the event named by the token, -1 for "?" (an epsilon-transition),
+        //or Integer.MIN_VALUE (reporting an error) if the name is not valid.
+        private int eventId(ByteBuffer buf, int token) {
+            if (this.tokens.isEpsilon(token)) {
+                return -1;
+            }
+
+            int start = this.tokens.start(token);
+            int end = this.tokens.end(token);
+            Integer id = (Integer)this.events.get(buf, start, end);
+            if (id != null) {
+                return id;
+            }
+
+            if (!isEventName(buf, start, end)) {
+                this.error("Invalid event name");
+                return Integer.MIN_VALUE;
+            }
+
+            id = this.events.size();
+            this.events.put(buf, start, end, id);
+            return id;
+        }
+
+        private void error(String message) {
+            this.report.error(new FsaFormatException(this.lineNr, message));
+        }
+    }
+
+    //Indicate if buf[start..end-1] is a valid state name, as FsaImpl.newState checks:
+    //a letter, then letters, digits and underscores.
+    private static boolean isStateName(ByteBuffer buf, int start, int end) {
+        for (int i = start; i < end; i++) {
+            byte b = buf.get(i);
+            if (b < 0) {
+                //Not plain ASCII, so check the decoded name.
+                return isStateName(RecordTokenizer.string(buf, start, end));
+            }
+
+            boolean letter = (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z');
+            boolean valid = i == start ? letter : letter || (b >= '0' && b <= '9') || b == '_';
+            if (!valid) {
+                return false;
+            }
+        }
+
+        return end > start;
+    }
+
+    private static boolean isStateName(String name) {
+        if (name.length() == 0 || !Character.isLetter(name.charAt(0))) {
+            return false;
+        }
+
+        for (int i = 1; i < name.length(); i++) {
+            if (!Character.isLetterOrDigit(name.charAt(i)) && name.charAt(i) != '_') {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    //Indicate if buf[start..end-1] is a valid event name, as FsaImpl.newTransition checks: all letters.
+    private static boolean isEventName(ByteBuffer buf, int start, int end) {
+        for (int i = start; i < end; i++) {
+            byte b = buf.get(i);
+            if (b < 0) {
+                String name = RecordTokenizer.string(buf, start, end);
+                for (int j = 0; j < name.length(); j++) {
+                    if (!Character.isLetter(name.charAt(j))) {
+                        return false;
+                    }
+                }
+
+                return true;
+            }
+
+            if (!((b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z'))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    //An open-addressing hash set of transitions, as (from, to, event) numbers.
+    private static class TransitionSet {
+        //from is stored plus one, so that 0 marks an empty slot.
+        private int[] froms;
+        private int[] tos;
+        private int[] events;
+        private int size;
+
+        private TransitionSet() {
+            this.froms = new int[1024];
+            this.tos = new int[1024];
+            this.events = new int[1024];
+            this.size = 0;
+        }
+
+        //Add the transition, and return false if it was already in the set.
+        private boolean add(int from, int to, int event) {
+            int mask = this.froms.length - 1;
+            int slot = hash(from, to, event) & mask;
+            while (this.froms[slot] != 0) {
+                if (this.froms[slot] == from + 1 && this.tos[slot] == to && this.events[slot] == event) {
+                    return false;
+                }
+
+                slot = (slot + 1) & mask;
+            }
+
+            this.froms[slot] = from + 1;
+            this.tos[slot] = to;
+            this.events[slot] = event;
+            this.size++;
+            //Double the table, keeping the load below one half.
+            if (2 * this.size > this.froms.length) {
+                int[] oldFroms = this.froms;
+                int[] oldTos = this.tos;
+                int[] oldEvents = this.events;
+                this.froms = new int[oldFroms.length * 2];
+                this.tos = new int[oldFroms.length * 2];
+                this.events = new int[oldFroms.length * 2];
+                mask = this.froms.length - 1;
+                for (int i = 0; i < oldFroms.length; i++) {
+                    if (oldFroms[i] != 0) {
+                        slot = hash(oldFroms[i] - 1, oldTos[i], oldEvents[i]) & mask;
+                        while (this.froms[slot] != 0) {
+                            slot = (slot + 1) & mask;
+                        }
+
+                        this.froms[slot] = oldFroms[i];
+                        this.tos[slot] = oldTos[i];
+                        this.events[slot] = oldEvents[i];
+                    }
+                }
+            }
+
+            return true;
+        }
+
+        private static int hash(int from, int to, int event) {
+            int hash = (from * 31 + to) * 31 + event;
+            hash *= 0x9E3779B9;
+            return hash ^ (hash >>> 16);
+        }
+    }
+}
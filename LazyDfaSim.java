@@ -0,0 +1,179 @@
+import java.util.*;
+
+public class LazyDfaSim implements FsaSim {
+    //Simulates a CompiledFsa through a DFA that is built lazily, one subset-construction state at a time.
+    //Each DFA state stands for a frontier (a set of NFA states closed under epsilon-transitions)
+    //and remembers the DFA state each event leads to once it has been worked out.
+    //Working out a new transition (a cache miss) steps a FrontierSim; following a known one (a hit) is
+    //a single array lookup.
+    //The cached DFA states are limited to about maxCacheBytes; when a new state would go over the limit,
+    //the whole cache is flushed and rebuilt from the states that are reached afterwards.
+    //The dead state (the empty frontier) is kept apart from the cache, so it is never flushed,
+    //and stepping into it or out of it never allocates.
+    public static final long DEFAULT_CACHE_BYTES = 8L * 1024 * 1024;
+
+    private final CompiledFsa fsa;
+    private final FrontierSim frontier;
+    private final int[] startStates;
+    private final long maxCacheBytes;
+    private final DfaState dead;
+    private Map<DfaState, DfaState> cache;
+    private long cacheBytes;
+    private DfaState current;
+    private long hits;
+    private long misses;
+    private long flushes;
+
+    public LazyDfaSim(CompiledFsa fsaIn) {
+        this(fsaIn, DEFAULT_CACHE_BYTES);
+    }
+
+    public LazyDfaSim(CompiledFsa fsaIn, long maxCacheBytes) {
+        this.fsa = fsaIn;
+        this.frontier = new FrontierSim(fsaIn);
+        this.startStates = this.frontier.currentStateArray();
+        this.maxCacheBytes = maxCacheBytes;
+        this.dead = new DfaState(new int[0], 0);
+        this.cache = new HashMap<DfaState, DfaState>();
+        this.cacheBytes = 0;
+        this.reset();
+    }
+
+    //Reset the simulation to its initial state(s)
+    public void reset() {
+        //The start state is looked up again, as it may have been flushed from the cache.
+        this.current = this.findState(this.startStates);
+    }
+
+    //Take one step in the simulation
+    //event==null or "" is an epsilon event, which leaves the frontier unchanged
+    public void step(String event) {
+        if (event == null || event.length() == 0) {
+            return;
+        }
+
+        this.step(this.fsa.eventId(event));
+    }
+
+    //Take one step in the simulation, for the event with the given id in the CompiledFsa.
+    //An id of -1, or any other id that is not an event of the CompiledFsa, empties the frontier.
+    public void step(int event) {
+        //The dead state stays dead, and leads nowhere else.
+        if (event < 0 || event >= this.fsa.eventCount() || this.current == this.dead) {
+            this.hits++;
+            this.current = this.dead;
+            return;
+        }
+
+        DfaState nextState = this.current.next[event];
+        if (nextState != null) {
+            this.hits++;
+        }
+
+        else {
+            //Work out the next frontier with the NFA simulator, and cache the transition.
+            this.misses++;
+            this.frontier.setCurrentStates(this.current.states);
+            this.frontier.step(event);
+            nextState = this.findState(this.frontier.currentStateArray());
+            this.current.next[event] = nextState;
+        }
+
+        this.current = nextState;
+    }
+
+    //Returns true if the simulation has recognised
+    //the sequence of events it has been given
+    public boolean isRecognised() {
+        return this.current.accepting;
+    }
+
+    //Return the number of steps that followed a cached transition
+    public long getHits() {
+        return this.hits;
+    }
+
+    //Return the number of steps that had to work out a new transition
+    public long getMisses() {
+        return this.misses;
+    }
+
+    //Return the number of times the cache has been flushed
+    public long getFlushes() {
+        return this.flushes;
+    }
+
+    //Return the number of DFA states in the cache
+    public int getCachedStates() {
+        return this.cache.size();
+    }
+
+    //Return the estimated bytes used by the cached DFA states
+    public long getCacheBytes() {
+        return this.cacheBytes;
+    }
+
+    //Return the cached DFA state for the frontier, adding it if it is new, or the dead state if it is empty.
+    //Adding a state that does not fit in the cache flushes the cache first.
+    private DfaState findState(int[] states) {
+        if (states.length == 0) {
+            return this.dead;
+        }
+
+        DfaState state = new DfaState(states, this.fsa.eventCount());
+        DfaState cached = this.cache.get(state);
+        if (cached != null) {
+            return cached;
+        }
+
+        for (int i = 0; i < states.length; i++) {
+            if (this.fsa.isFinal(states[i])) {
+                state.accepting = true;
+            }
+        }
+
+        if (this.cacheBytes + state.bytes() > this.maxCacheBytes && !this.cache.isEmpty()) {
+            //Dropping the map drops every cached state, and so every cached transition.
+            //(The current state is left out of the cache, and is replaced by the next step)
+            this.cache = new HashMap<DfaState, DfaState>();
+            this.cacheBytes = 0;
+            this.flushes++;
+        }
+
+        this.cache.put(state, state);
+        this.cacheBytes += state.bytes();
+        return state;
+    }
+
+    //A DFA state: a sorted frontier of NFA state ids, and the DFA state each event leads to
+    //(null until it is first worked out).
+    private static class DfaState {
+        private final int[] states;
+        private final DfaState[] next;
+        private final int hash;
+        private boolean accepting;
+
+        private DfaState(int[] statesIn, int eventCount) {
+            this.states = statesIn;
+            this.next = new DfaState[eventCount];
+            this.hash = Arrays.hashCode(statesIn);
+        }
+
+        //Return an estimate of the bytes used by this state, including its cache entry.
+        private long bytes() {
+            return 48 + 16 + 4L * this.states.length + 16 + 8L * this.next.length + 48;
+        }
+
+        public int hashCode() {
+            return this.hash;
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof DfaState)) {
+                return false;
+            }
+
+            return Arrays.equals(this.states, ((DfaState)o).states);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+
+abstract class LineScanner {
+    //Scans the lines of a file, memory-mapped in windows of up to 1GB so files of any size can be read,
+    //and hands each line to line() as a range of bytes in the window, without copying it.
+    //Lines end at \n, \r or \r\n, as for BufferedReader.readLine, and are numbered from 1.
+    private static final int WINDOW_SIZE = 1 << 30;
+
+    //The number of the line being scanned.
+    protected int lineNr;
+
+    protected LineScanner() {
+        this.lineNr = 0;
+    }
+
+    //Scan every line of the file.
+    void scan(File file) throws IOException, FsaFormatException {
+        try (FileChannel channel = new RandomAccessFile(file, "r").getChannel()) {
+            long size = channel.size();
+            long offset = 0;
+            while (offset < size) {
+                long length = Math.min(WINDOW_SIZE, size - offset);
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+                boolean last = offset + length == size;
+                //Scan the complete lines of the window.
+                //The next window starts at the first line that did not fit in this one.
+                int scanned = this.lines(window, (int)length, last);
+                if (scanned == 0 && !last) {
+                    throw new FsaFormatException(this.lineNr + 1, "Line too long");
+                }
+
+                offset += scanned;
+            }
+        }
+    }
+
+    //Scan the line buf[start..end-1].
+    abstract void line(ByteBuffer buf, int start, int end) throws FsaFormatException;
+
+    //Scan the lines of buf[0..length-1], and return the number of bytes scanned.
+    //Unless this is the last window, a final line without a line terminator is left for the next window.
+    private int lines(ByteBuffer buf, int length, boolean last) throws FsaFormatException {
+        int start = 0;
+        while (start < length) {
+            int end = RecordTokenizer.lineEnd(buf, start, length);
+            if (end == length && !last) {
+                return start;
+            }
+
+            //The \n of a \r\n may be at the start of the next window, so leave this line for there.
+            if (end == length - 1 && buf.get(end) == '\r' && !last) {
+                return start;
+            }
+
+            this.lineNr++;
+            this.line(buf, start, end);
+            //Step over the line terminator: \n, \r or \r\n.
+            if (end < length && buf.get(end) == '\r') {
+                end++;
+                if (end < length && buf.get(end) == '\n') {
+                    end++;
+                }
+            }
+
+            else if (end < length) {
+                end++;
+            }
+
+            start = end;
+        }
+
+        return start;
+    }
+}
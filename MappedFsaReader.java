@@ -0,0 +1,118 @@
+import java.io.*;
+import java.nio.*;
+
+public class MappedFsaReader {
+    //Reads FSA files in the format read by FsaReaderWriter, for files too large to read line by line.
+    //The file is memory-mapped (in windows of up to 1GB, so files of any size can be read) and its bytes
+    //are tokenised where they lie, without making a String per line or per token.
+    //State names are kept in a hash table of their bytes, so a transition finds its states
+    //without making a String for either name; only state records (and new event names) make Strings.
+    //It accepts exactly the files FsaReaderWriter accepts, and reports errors as an FsaFormatException
+    //with the same line number.
+
+    public MappedFsaReader() {
+    }
+
+    //Read the description of a finite-state automaton from the file, and transfer it to Fsa, f.
+    //If an error is detected, throw an exception that indicates the line
+    //where the error was detected, and has a suitable text message
+    public void read(File file, Fsa f) throws IOException, FsaFormatException {
+        //f's listeners are told of the whole read at once, rather than of each record.
+        FsaImpl.beginBatch(f);
+        try {
+            new Parse(f).scan(file);
+        }
+
+        finally {
+            FsaImpl.commitBatch(f);
+        }
+    }
+
+    //The state of one read: the Fsa being read into, and the names read so far.
+    private static class Parse extends LineScanner {
+        private final Fsa f;
+        private final NameTable states;
+        private final NameTable events;
+        private final RecordTokenizer tokens;
+
+        private Parse(Fsa fIn) {
+            this.f = fIn;
+            this.states = new NameTable();
+            this.events = new NameTable();
+            this.tokens = new RecordTokenizer();
+        }
+
+        //Parse the line buf[start..end-1].
+        void line(ByteBuffer buf, int start, int end) throws FsaFormatException {
+            int record = this.tokens.record(buf, start, end, this.lineNr);
+            //State record
+            if (record == RecordTokenizer.STATE) {
+                String name = this.tokens.string(1);
+                int xPos = this.tokens.number(2, this.lineNr);
+                int yPos = this.tokens.number(3, this.lineNr);
+                State s;
+                try {
+                    s = this.f.newState(name, xPos, yPos);
+                }
+
+                catch (IllegalArgumentException e) {
+                    throw new FsaFormatException(this.lineNr, "Illegal format");
+                }
+
+                this.states.put(buf, this.tokens.start(1), this.tokens.end(1), s);
+            }
+
+            //Transition record
+            else if (record == RecordTokenizer.TRANSITION) {
+                State fromState = this.state(buf, 1);
+                State toState = this.state(buf, 3);
+                String event = this.event(buf, 2);
+                try {
+                    this.f.newTransition(fromState, toState, event);
+                }
+
+                catch (IllegalArgumentException e) {
+                    throw new FsaFormatException(this.lineNr, "Illegal format");
+                }
+            }
+
+            //Initial record
+            else if (record == RecordTokenizer.INITIAL) {
+                this.state(buf, 1).setInitial(true);
+            }
+
+            //Final record
+            else if (record == RecordTokenizer.FINAL) {
+                this.state(buf, 1).setFinal(true);
+            }
+        }
+
+        //Return the state named by the token, which must have been defined by an earlier state record.
+        private State state(ByteBuffer buf, int token) throws FsaFormatException {
+            State s = (State)this.states.get(buf, this.tokens.start(token), this.tokens.end(token));
+            if (s == null) {
+                throw new FsaFormatException(this.lineNr, "Illegal format");
+            }
+
+            return s;
+        }
+
+        //Return the event named by the token, or null for "?" (an epsilon-transition).
+        private String event(ByteBuffer buf, int token) {
+            if (this.tokens.isEpsilon(token)) {
+                return null;
+            }
+
+            //Each distinct event name is only made into a String once.
+            int start = this.tokens.start(token);
+            int end = this.tokens.end(token);
+            String event = (String)this.events.get(buf, start, end);
+            if (event == null) {
+                event = this.tokens.string(token);
+                this.events.put(buf, start, end, event);
+            }
+
+            return event;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+import java.nio.*;
+
+class NameTable {
+    //An open-addressing hash table from names, given as bytes, to values.
+    //Looking a name up compares bytes in place, so it makes no objects.
+    //Not synchronized, but once filled it can be read by several threads at once.
+    private byte[][] keys;
+    private Object[] values;
+    private int[] hashes;
+    private int size;
+
+    NameTable() {
+        this(512);
+    }
+
+    //Make a table with room for the expected number of names before it must grow.
+    NameTable(int expected) {
+        int capacity = 1024;
+        while (capacity < 2 * expected && capacity < (1 << 30)) {
+            capacity *= 2;
+        }
+
+        this.keys = new byte[capacity][];
+        this.values = new Object[capacity];
+        this.hashes = new int[capacity];
+        this.size = 0;
+    }
+
+    //Return the value for the name buf[start..end-1], or null if there is none.
+    Object get(ByteBuffer buf, int start, int end) {
+        int hash = hash(buf, start, end);
+        int mask = this.keys.length - 1;
+        for (int slot = hash & mask; this.keys[slot] != null; slot = (slot + 1) & mask) {
+            if (this.hashes[slot] == hash && equal(this.keys[slot], buf, start, end)) {
+                return this.values[slot];
+            }
+        }
+
+        return null;
+    }
+
+    //Return the number of names in the table
+    int size() {
+        return this.size;
+    }
+
+    //Add the value for the name buf[start..end-1], which must not already be in the table.
+    void put(ByteBuffer buf, int start, int end, Object value) {
+        if (2 * (this.size + 1) > this.keys.length) {
+            this.grow();
+        }
+
+        byte[] key = new byte[end - start];
+        for (int i = 0; i < key.length; i++) {
+            key[i] = buf.get(start + i);
+        }
+
+        this.insert(key, hash(buf, start, end), value);
+        this.size++;
+    }
+
+    private void insert(byte[] key, int hash, Object value) {
+        int mask = this.keys.length - 1;
+        int slot = hash & mask;
+        while (this.keys[slot] != null) {
+            slot = (slot + 1) & mask;
+        }
+
+        this.keys[slot] = key;
+        this.hashes[slot] = hash;
+        this.values[slot] = value;
+    }
+
+    //Double the table, keeping the load below one half.
+    private void grow() {
+        byte[][] oldKeys = this.keys;
+        Object[] oldValues = this.values;
+        int[] oldHashes = this.hashes;
+        this.keys = new byte[oldKeys.length * 2][];
+        this.values = new Object[oldKeys.length * 2];
+        this.hashes = new int[oldKeys.length * 2];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                this.insert(oldKeys[i], oldHashes[i], oldValues[i]);
+            }
+        }
+    }
+
+    private static int hash(ByteBuffer buf, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + buf.get(i);
+        }
+
+        //Scramble the bits, as similar names have nearby hashes, which would cluster in the table.
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean equal(byte[] key, ByteBuffer buf, int start, int end) {
+        if (key.length != end - start) {
+            return false;
+        }
+
+        for (int i = 0; i < key.length; i++) {
+            if (key[i] != buf.get(start + i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+}
@@ -0,0 +1,481 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+public class ParallelFsaLoader {
+    //Loads large FSA files, in the format read by FsaReaderWriter, on several threads.
+    //The file is memory-mapped and split into line-aligned chunks, which are tokenised in parallel.
+    //Then, in two phases:
+    //  all state records are registered, in file order,
+    //  then every chunk's transitions are resolved to their states in parallel,
+    //  and added to the FSA in file order,
+    //and finally the initial and final records are applied.
+    //The FSA itself is only changed by the calling thread, so FsaImpl needs no locking.
+    //A state must still be defined on an earlier line than any record that uses it.
+    //Errors are reported as an FsaFormatException with the line number in the whole file,
+    //the first such line, as if the file had been read from start to end.
+    //When the file has an error, the FSA may be left holding records from beyond that line.
+    private static final int MIN_CHUNK_SIZE = 1 << 20;
+    private static final int MAX_CHUNK_SIZE = 1 << 28;
+    private static final int NO_ERROR = Integer.MAX_VALUE;
+
+    private final ForkJoinPool pool;
+
+    public ParallelFsaLoader() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public ParallelFsaLoader(ForkJoinPool poolIn) {
+        this.pool = poolIn;
+    }
+
+    //Load the finite-state automaton described by the file into a new FsaImpl,
+    //sized for the number of states and transitions in the file.
+    public FsaImpl load(File file) throws IOException, FsaFormatException {
+        try (FileChannel channel = new RandomAccessFile(file, "r").getChannel()) {
+            Chunk[] chunks = this.parse(channel);
+            int stateCount = 0;
+            int transitionCount = 0;
+            for (int i = 0; i < chunks.length; i++) {
+                stateCount += chunks[i].stateCount;
+                transitionCount += chunks[i].transitionCount;
+            }
+
+            FsaImpl f = new FsaImpl(stateCount, transitionCount);
+            this.build(chunks, f);
+            return f;
+        }
+    }
+
+    //Read the description of a finite-state automaton from the file, and transfer it to Fsa, f.
+    //If an error is detected, throw an exception that indicates the line
+    //where the error was detected, and has a suitable text message
+    public void read(File file, Fsa f) throws IOException, FsaFormatException {
+        try (FileChannel channel = new RandomAccessFile(file, "r").getChannel()) {
+            Chunk[] chunks = this.parse(channel);
+            //f's listeners are told of the whole file at once, rather than of each record.
+            FsaImpl.beginBatch(f);
+            try {
+                this.build(chunks, f);
+            }
+
+            finally {
+                FsaImpl.commitBatch(f);
+            }
+        }
+    }
+
+    //Split the file into chunks, and tokenise them in parallel.
+    private Chunk[] parse(FileChannel channel) throws IOException {
+        long size = channel.size();
+        long chunkSize = size / (4L * this.pool.getParallelism());
+        chunkSize = Math.max(MIN_CHUNK_SIZE, Math.min(MAX_CHUNK_SIZE, chunkSize));
+        List<Chunk> chunks = new ArrayList<Chunk>();
+        long offset = 0;
+        while (offset < size) {
+            long end = lineStart(channel, offset + chunkSize, size);
+            if (end - offset > Integer.MAX_VALUE) {
+                throw new IOException("Line too long");
+            }
+
+            chunks.add(new Chunk(channel.map(FileChannel.MapMode.READ_ONLY, offset, end - offset)));
+            offset = end;
+        }
+
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        Iterator it = chunks.iterator();
+        while (it.hasNext()) {
+            tasks.add(new Task((Chunk)it.next(), false, null));
+        }
+
+        this.invokeAll(tasks);
+        return chunks.toArray(new Chunk[chunks.size()]);
+    }
+
+    //Return the start of the first line at or after the position, or size if there is none.
+    //A chunk only ends after a \n, so a \r\n is never split between chunks.
+    private static long lineStart(FileChannel channel, long position, long size) throws IOException {
+        if (position >= size) {
+            return size;
+        }
+
+        ByteBuffer buf = ByteBuffer.allocate(4096);
+        while (position < size) {
+            buf.clear();
+            int read = channel.read(buf, position);
+            if (read < 0) {
+                break;
+            }
+
+            for (int i = 0; i < read; i++) {
+                if (buf.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+
+            position += read;
+        }
+
+        return size;
+    }
+
+    //Build the FSA from the tokenised chunks, and throw an exception for the first error in the file.
+    private void build(Chunk[] chunks, Fsa f) throws FsaFormatException {
+        //Number each chunk's lines from the end of the one before.
+        //A chunk with a syntax error stops counting there, so the chunks after it,
+        //which are never used, only have lines after the error.
+        int errorLine = NO_ERROR;
+        int lines = 0;
+        for (int i = 0; i < chunks.length; i++) {
+            chunks[i].firstLine = lines;
+            if (chunks[i].errorLine != NO_ERROR && errorLine == NO_ERROR) {
+                errorLine = lines + chunks[i].errorLine;
+            }
+
+            lines += chunks[i].lineCount;
+        }
+
+        //Phase one: register the states, in file order.
+        int stateCount = 0;
+        for (int i = 0; i < chunks.length; i++) {
+            stateCount += chunks[i].stateCount;
+        }
+
+        NameTable names = new NameTable(stateCount);
+        for (int i = 0; i < chunks.length; i++) {
+            errorLine = chunks[i].registerStates(f, names, errorLine);
+        }
+
+        //Phase two: resolve the transitions in parallel, then add them in file order.
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for (int i = 0; i < chunks.length; i++) {
+            chunks[i].limit = errorLine;
+            tasks.add(new Task(chunks[i], true, names));
+        }
+
+        this.invokeAll(tasks);
+        for (int i = 0; i < chunks.length; i++) {
+            if (chunks[i].resolveErrorLine < errorLine) {
+                errorLine = chunks[i].resolveErrorLine;
+            }
+        }
+
+        for (int i = 0; i < chunks.length; i++) {
+            errorLine = chunks[i].addTransitions(f, errorLine);
+        }
+
+        //Finally, apply the initial and final records.
+        for (int i = 0; i < chunks.length; i++) {
+            errorLine = chunks[i].applyMarks(names, errorLine);
+        }
+
+        if (errorLine != NO_ERROR) {
+            throw new FsaFormatException(errorLine, "Illegal format");
+        }
+    }
+
+    //Run the tasks on the pool, and wait for them all to finish.
+    private void invokeAll(List<Callable<Void>> tasks) {
+        List<Future<Void>> done = this.pool.invokeAll(tasks);
+        Iterator it = done.iterator();
+        while (it.hasNext()) {
+            try {
+                ((Future)it.next()).get();
+            }
+
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while loading", e);
+            }
+
+            catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException)e.getCause();
+                }
+
+                if (e.getCause() instanceof Error) {
+                    throw (Error)e.getCause();
+                }
+
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+    }
+
+    //Tokenise a chunk, or resolve its transitions.
+    private static class Task implements Callable<Void> {
+        private final Chunk chunk;
+        private final boolean resolve;
+        private final NameTable names;
+
+        private Task(Chunk chunkIn, boolean resolveIn, NameTable namesIn) {
+            this.chunk = chunkIn;
+            this.resolve = resolveIn;
+            this.names = namesIn;
+        }
+
+        public Void call() {
+            if (this.resolve) {
+                this.chunk.resolveTransitions(this.names);
+            }
+
+            else {
+                this.chunk.tokenise();
+            }
+
+            return null;
+        }
+    }
+
+    //A state, and the line of the file that defined it.
+    private static class Definition {
+        private final State state;
+        private final int line;
+
+        private Definition(State stateIn, int lineIn) {
+            this.state = stateIn;
+            this.line = lineIn;
+        }
+    }
+
+    //A line-aligned part of the file, and the records read from it.
+    //Records hold the positions of their tokens in the chunk's buffer, and their line within the chunk.
+    private static class Chunk {
+        private final ByteBuffer buf;
+        //The number of lines in the file before this chunk, and in this chunk.
+        private int firstLine;
+        private int lineCount;
+        //The line (within the chunk) of the first syntax error, or NO_ERROR.
+        private int errorLine;
+        //State records: line, name start, name end, x, y.
+        private int[] stateRecords;
+        private int stateCount;
+        //Transition records: line, from start, from end, event start (-1 for "?"), event end, to start, to end.
+        private int[] transitionRecords;
+        private int transitionCount;
+        //Initial and final records: line, record type, name start, name end.
+        private int[] markRecords;
+        private int markCount;
+        //Only records on lines (of the file) before limit are resolved.
+        private int limit;
+        //The resolved transitions, and the line (of the file) of the first that could not be resolved.
+        private State[] fromStates;
+        private State[] toStates;
+        private String[] events;
+        private int resolvedCount;
+        private int resolveErrorLine;
+
+        private Chunk(ByteBuffer bufIn) {
+            this.buf = bufIn;
+            this.errorLine = NO_ERROR;
+            this.resolveErrorLine = NO_ERROR;
+            this.stateRecords = new int[5 * 64];
+            this.transitionRecords = new int[7 * 64];
+            this.markRecords = new int[4 * 64];
+        }
+
+        //Split the chunk into lines and tokens, and keep its records.
+        //Stop at the first line that is not a valid record.
+        private void tokenise() {
+            RecordTokenizer tokens = new RecordTokenizer();
+            int length = this.buf.limit();
+            int start = 0;
+            while (start < length) {
+                int end = RecordTokenizer.lineEnd(this.buf, start, length);
+                this.lineCount++;
+                try {
+                    this.record(tokens, tokens.record(this.buf, start, end, this.lineCount));
+                }
+
+                catch (FsaFormatException e) {
+                    this.errorLine = this.lineCount;
+                    return;
+                }
+
+                //Step over the line terminator: \n, \r or \r\n.
+                if (end < length && this.buf.get(end) == '\r') {
+                    end++;
+                    if (end < length && this.buf.get(end) == '\n') {
+                        end++;
+                    }
+                }
+
+                else if (end < length) {
+                    end++;
+                }
+
+                start = end;
+            }
+        }
+
+        //Keep the record just tokenised.
+        private void record(RecordTokenizer tokens, int type) throws FsaFormatException {
+            if (type == RecordTokenizer.STATE) {
+                if (5 * (this.stateCount + 1) > this.stateRecords.length) {
+                    this.stateRecords = Arrays.copyOf(this.stateRecords, this.stateRecords.length * 2);
+                }
+
+                int i = 5 * this.stateCount++;
+                this.stateRecords[i] = this.lineCount;
+                this.stateRecords[i + 1] = tokens.start(1);
+                this.stateRecords[i + 2] = tokens.end(1);
+                this.stateRecords[i + 3] = tokens.number(2, this.lineCount);
+                this.stateRecords[i + 4] = tokens.number(3, this.lineCount);
+            }
+
+            else if (type == RecordTokenizer.TRANSITION) {
+                if (7 * (this.transitionCount + 1) > this.transitionRecords.length) {
+                    this.transitionRecords = Arrays.copyOf(this.transitionRecords, this.transitionRecords.length * 2);
+                }
+
+                int i = 7 * this.transitionCount++;
+                this.transitionRecords[i] = this.lineCount;
+                this.transitionRecords[i + 1] = tokens.start(1);
+                this.transitionRecords[i + 2] = tokens.end(1);
+                this.transitionRecords[i + 3] = tokens.isEpsilon(2) ? -1 : tokens.start(2);
+                this.transitionRecords[i + 4] = tokens.end(2);
+                this.transitionRecords[i + 5] = tokens.start(3);
+                this.transitionRecords[i + 6] = tokens.end(3);
+            }
+
+            else if (type == RecordTokenizer.INITIAL || type == RecordTokenizer.FINAL) {
+                if (4 * (this.markCount + 1) > this.markRecords.length) {
+                    this.markRecords = Arrays.copyOf(this.markRecords, this.markRecords.length * 2);
+                }
+
+                int i = 4 * this.markCount++;
+                this.markRecords[i] = this.lineCount;
+                this.markRecords[i + 1] = type;
+                this.markRecords[i + 2] = tokens.start(1);
+                this.markRecords[i + 3] = tokens.end(1);
+            }
+        }
+
+        //Add this chunk's states to f, and to names, up to the error line.
+        //Return the error line, which is earlier if a state could not be added.
+        private int registerStates(Fsa f, NameTable names, int errorLine) {
+            for (int r = 0; r < this.stateCount; r++) {
+                int i = 5 * r;
+                int line = this.firstLine + this.stateRecords[i];
+                if (line >= errorLine) {
+                    break;
+                }
+
+                int start = this.stateRecords[i + 1];
+                int end = this.stateRecords[i + 2];
+                State s;
+                try {
+                    s = f.newState(RecordTokenizer.string(this.buf, start, end), this.stateRecords[i + 3], this.stateRecords[i + 4]);
+                }
+
+                catch (IllegalArgumentException e) {
+                    return line;
+                }
+
+                names.put(this.buf, start, end, new Definition(s, line));
+            }
+
+            return errorLine;
+        }
+
+        //Look up the states of this chunk's transitions before the limit, and make their event names.
+        //Stop at the first transition naming a state not defined on an earlier line.
+        private void resolveTransitions(NameTable names) {
+            NameTable eventNames = new NameTable();
+            this.fromStates = new State[this.transitionCount];
+            this.toStates = new State[this.transitionCount];
+            this.events = new String[this.transitionCount];
+            for (int r = 0; r < this.transitionCount; r++) {
+                int i = 7 * r;
+                int line = this.firstLine + this.transitionRecords[i];
+                if (line >= this.limit) {
+                    return;
+                }
+
+                State fromState = this.lookup(names, this.transitionRecords[i + 1], this.transitionRecords[i + 2], line);
+                State toState = this.lookup(names, this.transitionRecords[i + 5], this.transitionRecords[i + 6], line);
+                if (fromState == null || toState == null) {
+                    this.resolveErrorLine = line;
+                    return;
+                }
+
+                //Each distinct event name is only made into a String once per chunk.
+                String event = null;
+                int start = this.transitionRecords[i + 3];
+                if (start >= 0) {
+                    int end = this.transitionRecords[i + 4];
+                    event = (String)eventNames.get(this.buf, start, end);
+                    if (event == null) {
+                        event = RecordTokenizer.string(this.buf, start, end);
+                        eventNames.put(this.buf, start, end, event);
+                    }
+                }
+
+                this.fromStates[r] = fromState;
+                this.toStates[r] = toState;
+                this.events[r] = event;
+                this.resolvedCount++;
+            }
+        }
+
+        //Add this chunk's resolved transitions to f, up to the error line.
+        //Return the error line, which is earlier if a transition could not be added.
+        private int addTransitions(Fsa f, int errorLine) {
+            for (int r = 0; r < this.resolvedCount; r++) {
+                int line = this.firstLine + this.transitionRecords[7 * r];
+                if (line >= errorLine) {
+                    break;
+                }
+
+                try {
+                    f.newTransition(this.fromStates[r], this.toStates[r], this.events[r]);
+                }
+
+                catch (IllegalArgumentException e) {
+                    return line;
+                }
+            }
+
+            return errorLine;
+        }
+
+        //Make this chunk's initial and final states so, up to the error line.
+        //Return the error line, which is earlier if a record names a state not defined on an earlier line.
+        private int applyMarks(NameTable names, int errorLine) {
+            for (int r = 0; r < this.markCount; r++) {
+                int i = 4 * r;
+                int line = this.firstLine + this.markRecords[i];
+                if (line >= errorLine) {
+                    break;
+                }
+
+                State s = this.lookup(names, this.markRecords[i + 2], this.markRecords[i + 3], line);
+                if (s == null) {
+                    return line;
+                }
+
+                if (this.markRecords[i + 1] == RecordTokenizer.INITIAL) {
+                    s.setInitial(true);
+                }
+
+                else {
+                    s.setFinal(true);
+                }
+            }
+
+            return errorLine;
+        }
+
+        //Return the state named buf[start..end-1], or null if it is not defined before the line.
+        private State lookup(NameTable names, int start, int end, int line) {
+            Definition d = (Definition)names.get(this.buf, start, end);
+            if (d == null || d.line >= line) {
+                return null;
+            }
+
+            return d.state;
+        }
+    }
+}
@@ -0,0 +1,241 @@
+import java.nio.*;
+import java.nio.charset.*;
+
+class RecordTokenizer {
+    //Splits lines of FSA records, held as bytes in a ByteBuffer, into tokens without copying them.
+    //Used by the readers that work on bytes (MappedFsaReader, ParallelFsaLoader) so they read
+    //records the same way.
+    //Lines are read exactly as FsaReaderWriter reads them: the line is trimmed as String.trim does,
+    //then split into tokens at the characters StringTokenizer splits at (" \t\n\r\f").
+    //A line's record type is given by its first character, and its keyword need only start with
+    //the keyword's letters, so "states" is read as "state" and "initialx" as "initial".
+    public static final int NONE = 0;
+    public static final int STATE = 1;
+    public static final int TRANSITION = 2;
+    public static final int INITIAL = 3;
+    public static final int FINAL = 4;
+
+    private static final byte[] STATE_KEYWORD = {'s', 't', 'a', 't', 'e'};
+    private static final byte[] TRANSITION_KEYWORD = {'t', 'r', 'a', 'n', 's', 'i', 't', 'i', 'o', 'n'};
+    private static final byte[] INITIAL_KEYWORD = {'i', 'n', 'i', 't', 'i', 'a', 'l'};
+    private static final byte[] FINAL_KEYWORD = {'f', 'i', 'n', 'a', 'l'};
+
+    private ByteBuffer buf;
+    //The start and end of each token of the current line.
+    //At most 5 are kept, as no record has more than 4.
+    private final int[] tokenStart;
+    private final int[] tokenEnd;
+    private int count;
+
+    RecordTokenizer() {
+        this.tokenStart = new int[5];
+        this.tokenEnd = new int[5];
+    }
+
+    //Return the index of the line terminator (\n or \r) of the line starting at start,
+    //or limit if the line has no terminator before limit.
+    static int lineEnd(ByteBuffer buf, int start, int limit) {
+        int end = start;
+        while (end < limit && buf.get(end) != '\n' && buf.get(end) != '\r') {
+            end++;
+        }
+
+        return end;
+    }
+
+    //Split the line buf[start..end-1] into tokens, and return its record type.
+    //Throw an FsaFormatException for lineNr if the line is not a comment, a blank line,
+    //or a record with the right keyword and number of tokens.
+    int record(ByteBuffer bufIn, int start, int end, int lineNr) throws FsaFormatException {
+        this.buf = bufIn;
+        this.count = 0;
+        //Trim the line.
+        while (start < end && isTrimmed(bufIn.get(start))) {
+            start++;
+        }
+
+        while (end > start && isTrimmed(bufIn.get(end - 1))) {
+            end--;
+        }
+
+        int i = start;
+        while (i < end && this.count < 5) {
+            while (i < end && isSpace(bufIn.get(i))) {
+                i++;
+            }
+
+            if (i == end) {
+                break;
+            }
+
+            this.tokenStart[this.count] = i;
+            while (i < end && !isSpace(bufIn.get(i))) {
+                i++;
+            }
+
+            this.tokenEnd[this.count] = i;
+            this.count++;
+        }
+
+        //If line is empty, skip it.
+        if (this.count == 0) {
+            return NONE;
+        }
+
+        byte first = bufIn.get(this.tokenStart[0]);
+        if (first == 's') {
+            this.expect(4, STATE_KEYWORD, lineNr);
+            return STATE;
+        }
+
+        if (first == 't') {
+            this.expect(4, TRANSITION_KEYWORD, lineNr);
+            return TRANSITION;
+        }
+
+        if (first == 'i') {
+            this.expect(2, INITIAL_KEYWORD, lineNr);
+            return INITIAL;
+        }
+
+        if (first == 'f') {
+            this.expect(2, FINAL_KEYWORD, lineNr);
+            return FINAL;
+        }
+
+        //If none of these, and not a comment, throw an error.
+        if (first != '#') {
+            throw new FsaFormatException(lineNr, "Illegal format");
+        }
+
+        return NONE;
+    }
+
+    //Check that the line has the expected number of tokens, and that the first starts with the keyword.
+    private void expect(int expected, byte[] keyword, int lineNr) throws FsaFormatException {
+        if (this.count != expected || !this.startsWith(0, keyword)) {
+            throw new FsaFormatException(lineNr, "Illegal format");
+        }
+    }
+
+    //Indicate if the token starts with the bytes given.
+    private boolean startsWith(int token, byte[] bytes) {
+        int start = this.tokenStart[token];
+        if (this.tokenEnd[token] - start < bytes.length) {
+            return false;
+        }
+
+        for (int i = 0; i < bytes.length; i++) {
+            if (this.buf.get(start + i) != bytes[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    //Return the start of the token
+    int start(int token) {
+        return this.tokenStart[token];
+    }
+
+    //Return the end (exclusive) of the token
+    int end(int token) {
+        return this.tokenEnd[token];
+    }
+
+    //Indicate if the token is "?", the event of an epsilon-transition
+    boolean isEpsilon(int token) {
+        return this.tokenEnd[token] - this.tokenStart[token] == 1 && this.buf.get(this.tokenStart[token]) == '?';
+    }
+
+    //Return the token as a String
+    String string(int token) {
+        return string(this.buf, this.tokenStart[token], this.tokenEnd[token]);
+    }
+
+    //Parse the token as an int: digits, optionally after a '-'.
+    int number(int token, int lineNr) throws FsaFormatException {
+        int i = this.tokenStart[token];
+        int end = this.tokenEnd[token];
+        for (int j = i; j < end; j++) {
+            if (this.buf.get(j) < 0) {
+                //Not plain ASCII, so parse it as FsaReaderWriter does (which takes any Unicode digits).
+                return number(this.string(token), lineNr);
+            }
+        }
+
+        boolean negative = this.buf.get(i) == '-';
+        if (negative) {
+            i++;
+        }
+
+        if (i == end) {
+            throw new FsaFormatException(lineNr, "Illegal format");
+        }
+
+        long value = 0;
+        for (; i < end; i++) {
+            byte b = this.buf.get(i);
+            if (b < '0' || b > '9') {
+                throw new FsaFormatException(lineNr, "Illegal format");
+            }
+
+            value = value * 10 + (b - '0');
+            if (value > Integer.MAX_VALUE + 1L) {
+                throw new FsaFormatException(lineNr, "Illegal format");
+            }
+        }
+
+        if (negative) {
+            value = -value;
+        }
+
+        if (value > Integer.MAX_VALUE) {
+            throw new FsaFormatException(lineNr, "Illegal format");
+        }
+
+        return (int)value;
+    }
+
+    //Parse the String as FsaReaderWriter parses a coordinate.
+    private static int number(String s, int lineNr) throws FsaFormatException {
+        for (int i = 0; i < s.length(); i++) {
+            if (!Character.isDigit(s.charAt(i)) && !(i == 0 && s.charAt(i) == '-')) {
+                throw new FsaFormatException(lineNr, "Illegal format");
+            }
+        }
+
+        try {
+            return Integer.parseInt(s);
+        }
+
+        catch (NumberFormatException e) {
+            throw new FsaFormatException(lineNr, "Illegal format");
+        }
+    }
+
+    //Indicate if the byte separates tokens, as it does for StringTokenizer.
+    static boolean isSpace(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r' || b == '\f';
+    }
+
+    //Indicate if String.trim removes the byte from the ends of a line.
+    static boolean isTrimmed(byte b) {
+        return b >= 0 && b <= ' ';
+    }
+
+    //Return buf[start..end-1] as a String, decoding it as UTF-8 if it is not plain ASCII.
+    static String string(ByteBuffer buf, int start, int end) {
+        byte[] bytes = new byte[end - start];
+        boolean ascii = true;
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buf.get(start + i);
+            if (bytes[i] < 0) {
+                ascii = false;
+            }
+        }
+
+        return new String(bytes, ascii ? StandardCharsets.ISO_8859_1 : StandardCharsets.UTF_8);
+    }
+}
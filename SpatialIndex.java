@@ -0,0 +1,237 @@
+import java.awt.Rectangle;
+import java.util.*;
+
+class SpatialIndex<T> {
+    //A quadtree of items, each with a rectangle, answering which items' rectangles meet a given rectangle.
+    //Each item is kept in the smallest node whose square holds its whole rectangle, so an item
+    //that crosses the middle of a node stays in that node; a leaf holding too many items is split.
+    //The root grows (each time doubling, toward the new item) to hold items anywhere, so there are
+    //no bounds to set in advance. Looking an item up, adding and removing it take time in proportion
+    //to the depth of the tree, which is logarithmic in the area the items are spread over.
+    //Items are compared by identity. Not synchronized.
+    private static final int CAPACITY = 16;
+    //A node no larger than this is not split, so that many items in one place cannot deepen the tree without end.
+    private static final long MIN_SIZE = 16;
+    private static final long ROOT_SIZE = 1024;
+
+    private Node<T> root;
+    private final Map<T, Entry<T>> entries;
+
+    SpatialIndex() {
+        this.root = new Node<T>(0, 0, ROOT_SIZE);
+        this.entries = new IdentityHashMap<T, Entry<T>>();
+    }
+
+    //Return the number of items
+    int size() {
+        return this.entries.size();
+    }
+
+    //Indicate if the item is in the index
+    boolean contains(T item) {
+        return this.entries.containsKey(item);
+    }
+
+    //Return the items in the index (a view, which must not be changed while it is in use)
+    Set<T> items() {
+        return Collections.unmodifiableSet(this.entries.keySet());
+    }
+
+    //Return the item's rectangle, or null if it is not in the index
+    Rectangle bounds(T item) {
+        Entry<T> entry = this.entries.get(item);
+        return entry == null ? null : new Rectangle(entry.x, entry.y, entry.w, entry.h);
+    }
+
+    //Remove every item.
+    void clear() {
+        this.root = new Node<T>(0, 0, ROOT_SIZE);
+        this.entries.clear();
+    }
+
+    //Add the item with the rectangle (x,y,w,h), or move it there if it is already in the index.
+    void put(T item, int x, int y, int w, int h) {
+        Entry<T> entry = this.entries.get(item);
+        if (entry != null) {
+            if (entry.x == x && entry.y == y && entry.w == w && entry.h == h) {
+                return;
+            }
+
+            entry.node.remove(entry);
+        }
+
+        else {
+            entry = new Entry<T>(item);
+            this.entries.put(item, entry);
+        }
+
+        entry.x = x;
+        entry.y = y;
+        entry.w = Math.max(w, 1);
+        entry.h = Math.max(h, 1);
+        while (!this.root.holds(entry)) {
+            this.grow(entry);
+        }
+
+        this.root.add(entry);
+    }
+
+    //Remove the item, if it is in the index.
+    //Nodes left empty are kept, as the items removed from an area are usually replaced.
+    void remove(T item) {
+        Entry<T> entry = this.entries.remove(item);
+        if (entry != null) {
+            entry.node.remove(entry);
+        }
+    }
+
+    //Add to out each item whose rectangle meets the rectangle (x,y,w,h).
+    //Items are not added in any particular order.
+    void query(int x, int y, int w, int h, Collection<? super T> out) {
+        this.root.query(x, y, (long)x + w, (long)y + h, out);
+    }
+
+    //Double the root, toward the entry.
+    private void grow(Entry<T> entry) {
+        long size = this.root.size;
+        long x = entry.x < this.root.x ? this.root.x - size : this.root.x;
+        long y = entry.y < this.root.y ? this.root.y - size : this.root.y;
+        Node<T> grown = new Node<T>(x, y, 2 * size);
+        grown.split();
+        int quadrant = (this.root.x == x ? 0 : 1) + (this.root.y == y ? 0 : 2);
+        grown.children[quadrant] = this.root;
+        this.root = grown;
+    }
+
+    private static class Entry<T> {
+        private final T item;
+        private int x;
+        private int y;
+        private int w;
+        private int h;
+        //The node holding the entry, and the entry's place in its list.
+        private Node<T> node;
+        private int index;
+
+        private Entry(T itemIn) {
+            this.item = itemIn;
+        }
+    }
+
+    //A square of the plane, [x, x+size) by [y, y+size).
+    private static class Node<T> {
+        private final long x;
+        private final long y;
+        private final long size;
+        private final List<Entry<T>> entries;
+        //The four quarters (top left, top right, bottom left, bottom right), or null for a leaf.
+        private Node<T>[] children;
+
+        private Node(long xIn, long yIn, long sizeIn) {
+            this.x = xIn;
+            this.y = yIn;
+            this.size = sizeIn;
+            this.entries = new ArrayList<Entry<T>>(4);
+        }
+
+        private boolean holds(Entry<T> e) {
+            return e.x >= this.x && e.y >= this.y && (long)e.x + e.w <= this.x + this.size && (long)e.y + e.h <= this.y + this.size;
+        }
+
+        //Add the entry to the smallest node under this one that holds it.
+        private void add(Entry<T> e) {
+            Node<T> node = this;
+            while (true) {
+                if (node.children == null) {
+                    node.hold(e);
+                    if (node.entries.size() > CAPACITY && node.size > MIN_SIZE) {
+                        node.split();
+                        node.push();
+                    }
+
+                    return;
+                }
+
+                Node<T> child = node.childHolding(e);
+                if (child == null) {
+                    node.hold(e);
+                    return;
+                }
+
+                node = child;
+            }
+        }
+
+        private void hold(Entry<T> e) {
+            e.node = this;
+            e.index = this.entries.size();
+            this.entries.add(e);
+        }
+
+        //Remove the entry, by moving the last entry into its place.
+        private void remove(Entry<T> e) {
+            Entry<T> last = this.entries.remove(this.entries.size() - 1);
+            if (last != e) {
+                this.entries.set(e.index, last);
+                last.index = e.index;
+            }
+
+            e.node = null;
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private void split() {
+            long half = this.size / 2;
+            this.children = new Node[4];
+            for (int i = 0; i < 4; i++) {
+                this.children[i] = new Node<T>(this.x + (i & 1) * half, this.y + (i >> 1) * half, half);
+            }
+        }
+
+        //Move the entries that fit in a child down to it.
+        private void push() {
+            List<Entry<T>> held = new ArrayList<Entry<T>>(this.entries);
+            this.entries.clear();
+            for (int i = 0; i < held.size(); i++) {
+                Entry<T> e = held.get(i);
+                Node<T> child = this.childHolding(e);
+                if (child == null) {
+                    this.hold(e);
+                }
+
+                else {
+                    child.add(e);
+                }
+            }
+        }
+
+        private Node<T> childHolding(Entry<T> e) {
+            for (int i = 0; i < 4; i++) {
+                if (this.children[i].holds(e)) {
+                    return this.children[i];
+                }
+            }
+
+            return null;
+        }
+
+        private void query(long x0, long y0, long x1, long y1, Collection<? super T> out) {
+            if (x1 <= this.x || y1 <= this.y || x0 >= this.x + this.size || y0 >= this.y + this.size) {
+                return;
+            }
+
+            for (int i = 0; i < this.entries.size(); i++) {
+                Entry<T> e = this.entries.get(i);
+                if (e.x < x1 && e.y < y1 && (long)e.x + e.w > x0 && (long)e.y + e.h > y0) {
+                    out.add(e.item);
+                }
+            }
+
+            if (this.children != null) {
+                for (int i = 0; i < 4; i++) {
+                    this.children[i].query(x0, y0, x1, y1, out);
+                }
+            }
+        }
+    }
+}
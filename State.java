@@ -14,6 +14,12 @@ public interface State
     public Set<Transition> transitionsFrom();
 
 
+    //Return a set containing all transitions FROM this state
+    //caused by the given event
+    //event==null or "" specifies the epsilon-transitions
+    public Set<Transition> transitionsFrom(String event);
+
+
     //Return a set containing all transitions TO this state
     public Set<Transition> transitionsTo();
     
@@ -8,6 +8,15 @@ import java.util.*;
 import java.beans.*;
 
 public class StateIcon extends JComponent implements StateListener {
+	//The size of the box a state is drawn in, with the state's position at its top left corner,
+	//and the centre and radius of the state's circle within the box.
+	public static final int WIDTH = 140;
+	public static final int HEIGHT = 190;
+	public static final int CENTRE_X = 75;
+	public static final int CENTRE_Y = 105;
+	public static final int RADIUS = 60;
+	//The gap between a final state's circle and the ring drawn around it.
+	public static final int FINAL_GAP = 5;
 	private StateImpl state;
 	private boolean isSelected;
 
@@ -18,8 +27,13 @@ public class StateIcon extends JComponent implements StateListener {
 
 	//Called whenever the observable properties of a state have changed
     public void stateHasChanged() {
-    	this.setBounds(this.state.getXpos(), this.state.getYpos(), 140, 190);
-    	this.repaint(0, 0, 600, 600);
+    	//Moving the icon repaints where it was and where it is; only the icon itself is repainted here.
+    	this.setBounds(this.state.getXpos(), this.state.getYpos(), WIDTH, HEIGHT);
+    	this.repaint();
+    }
+
+    public State getState() {
+    	return this.state;
     }
 
     public void updateState(StateImpl stateIn) {
@@ -54,25 +68,43 @@ public class StateIcon extends JComponent implements StateListener {
 
     protected void paintComponent(Graphics g) {
     	super.paintComponent(g);
+    	paintState(g, this.state, this.isSelected);
+    }
+
+    //Draw the state as its icon shows it, with the top left corner of its box at (0,0).
+    //FsaPanel draws states this way when it draws them itself.
+    static void paintState(Graphics g, State s, boolean selected) {
+    	paintState(g, s, selected, true);
+    }
+
+    //Draw the state, leaving out its name unless named is true (for a canvas zoomed too far out to read it).
+    static void paintState(Graphics g, State s, boolean selected, boolean named) {
+    	//Everything is drawn from the circle's centre and radius, which FsaPanel.stateAt also hit-tests with.
+    	int left = CENTRE_X - RADIUS;
+    	int top = CENTRE_Y - RADIUS;
     	g.setColor(Color.BLACK);
-    	g.drawString(this.state.getName(), 75, 105);
-    	if (this.isSelected) {
-    		g.fillOval(15, 45, 120, 120);
+    	if (named) {
+    		g.drawString(s.getName(), CENTRE_X, CENTRE_Y);
+    	}
+
+    	if (selected) {
+    		g.fillOval(left, top, 2 * RADIUS, 2 * RADIUS);
     	}
 
     	else {
-    		g.drawOval(15, 45, 120, 120);
+    		g.drawOval(left, top, 2 * RADIUS, 2 * RADIUS);
     	}
 
-    	if (this.state.isInitial()) {
-    		g.drawLine(0, 0, 25, 35);
-    		g.drawLine(25, 35, 25, 10);
-    		g.drawLine(25, 10, 50, 50);
+    	//The arrow into an initial state starts at the top left corner of the box and ends inside the circle.
+    	if (s.isInitial()) {
+    		g.drawLine(0, 0, left + 10, top - 10);
+    		g.drawLine(left + 10, top - 10, left + 10, top - 35);
+    		g.drawLine(left + 10, top - 35, left + 35, top + 5);
     	}
 
-    	if (this.state.isFinal()) {
+    	if (s.isFinal()) {
     		g.setColor(Color.BLACK);
-    		g.drawOval(10, 40, 129, 130);
+    		g.drawOval(left - FINAL_GAP, top - FINAL_GAP, 2 * (RADIUS + FINAL_GAP), 2 * (RADIUS + FINAL_GAP));
     	}
     }
 }
\ No newline at end of file
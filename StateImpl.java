@@ -1,3 +1,4 @@
+import java.io.*;
 import java.util.*;
 
 public class StateImpl implements State {
@@ -7,17 +8,30 @@ public class StateImpl implements State {
 	private Set<StateListener> listeners;
 	private Set<Transition> fromTransitions;
 	private Set<Transition> toTransitions;
+	//fromByEvent indexes the transitions from this state by their event name.
+	//Epsilon-transitions are kept apart in fromEpsilon.
+	private Map<String, Set<Transition>> fromByEvent;
+	private Set<Transition> fromEpsilon;
 	private boolean initialState;
 	private boolean finalState;
 	private boolean currentState;
+	private FsaImpl fsa;
 
 	public StateImpl(String name, int x, int y) {
+		this(null, name, x, y);
+	}
+
+	//fsa is the FsaImpl that owns this state, and is told when its flags change.
+	public StateImpl(FsaImpl fsa, String name, int x, int y) {
+		this.fsa = fsa;
 		this.stateName = name;
 		this.xPos = x;
 		this.yPos = y;
         listeners = new HashSet<StateListener>();
         fromTransitions = new HashSet<Transition>();
         toTransitions = new HashSet<Transition>();
+        fromByEvent = new HashMap<String, Set<Transition>>();
+        fromEpsilon = new HashSet<Transition>();
 		this.initialState = false;
 		this.finalState = false;
 		this.currentState = false;
@@ -38,6 +52,22 @@ public class StateImpl implements State {
     	return this.fromTransitions;
     }
 
+    //Return a set containing all transitions FROM this state
+    //caused by the given event
+    //event==null or "" specifies the epsilon-transitions
+    public Set<Transition> transitionsFrom(String event) {
+        if (event == null || event.length() == 0) {
+            return this.fromEpsilon;
+        }
+
+        Set<Transition> eventTransitions = this.fromByEvent.get(event);
+        if (eventTransitions == null) {
+            return Collections.emptySet();
+        }
+
+        return eventTransitions;
+    }
+
     //Return a set containing all transitions TO this state
     public Set<Transition> transitionsTo() {
     	return this.toTransitions;
@@ -48,9 +78,13 @@ public class StateImpl implements State {
     public void moveBy(int dx, int dy) {
     	this.xPos += dx;
     	this. yPos += dy;
+        if (this.fsa != null) {
+            this.fsa.stateMoved(this, dx, dy);
+        }
+
         Iterator it = this.listeners.iterator();
         while (it.hasNext()) {
-            ((StateIcon)it.next()).updateState(this);
+            ((StateListener)it.next()).stateHasChanged();
         }
     }
 
@@ -60,30 +94,29 @@ public class StateImpl implements State {
     //where j is 1/0 if this state is/is-not an initial state  
     //where k is 1/0 if this state is/is-not a final state  
     public String toString() {
-    	String stateString = "";
-    	stateString += this.stateName;
-    	stateString += "(";
-    	stateString += this.xPos;
-    	stateString += ",";
-    	stateString += this.yPos;
-    	stateString += ")";
-		if (this.initialState) {
-			stateString += "1";
-		}
-
-		else {
-			stateString += "0";
-		}
+    	StringBuilder stateString = new StringBuilder();
+    	try {
+    		this.describeTo(stateString);
+    	}
 
-		if (this.finalState) {
-			stateString += "1";
-		}
+    	catch (IOException io) {
+    		//A StringBuilder never throws IOException.
+    		throw new IllegalStateException(io);
+    	}
 
-		else {
-			stateString += "0";
-		}
+    	return stateString.toString();
+    }
 
-		return stateString;
+    //Write the information returned by toString to a.
+    public void describeTo(Appendable a) throws IOException {
+    	a.append(this.stateName);
+    	a.append('(');
+    	a.append(String.valueOf(this.xPos));
+    	a.append(',');
+    	a.append(String.valueOf(this.yPos));
+    	a.append(')');
+    	a.append(this.initialState ? '1' : '0');
+    	a.append(this.finalState ? '1' : '0');
     }
 
     //Return the name of this state 
@@ -103,10 +136,16 @@ public class StateImpl implements State {
 
     //Set/clear this state as an initial state
     public void setInitial(boolean b) {
+    	//The state is changed before the FSA is told, so that its listeners see the new value.
+    	boolean changed = this.initialState != b;
     	this.initialState = b;
+    	if (this.fsa != null && changed) {
+    		this.fsa.initialChanged(this, b);
+    	}
+
         Iterator it = this.listeners.iterator();
         while (it.hasNext()) {
-            ((StateIcon)it.next()).updateState(this);
+            ((StateListener)it.next()).stateHasChanged();
         }
     }
 
@@ -117,10 +156,16 @@ public class StateImpl implements State {
 
     //Set/clear this state as a final state
     public void setFinal(boolean b) {
+    	//The state is changed before the FSA is told, so that its listeners see the new value.
+    	boolean changed = this.finalState != b;
     	this.finalState = b;
+    	if (this.fsa != null && changed) {
+    		this.fsa.finalChanged(this, b);
+    	}
+
         Iterator it = this.listeners.iterator();
         while (it.hasNext()) {
-            ((StateIcon)it.next()).updateState(this);
+            ((StateListener)it.next()).stateHasChanged();
         }
     }
 
@@ -135,11 +180,37 @@ public class StateImpl implements State {
     }
 
     public void setCurrent(boolean b) {
+        //As for setInitial, the state is changed before the FSA is told.
+        boolean changed = this.currentState != b;
         this.currentState = b;
+        if (this.fsa != null && changed) {
+            this.fsa.currentChanged(this, b);
+        }
+    }
+
+    //Set the FsaImpl that owns this state.
+    //A state removed from its FSA has no owner.
+    public void setFsa(FsaImpl fsaIn) {
+        this.fsa = fsaIn;
     }
 
     public void addFromTransition(Transition t) {
         this.fromTransitions.add(t);
+        //Add the transition to the bucket for its event.
+        String event = t.eventName();
+        if (event == null || event.length() == 0) {
+            this.fromEpsilon.add(t);
+        }
+
+        else {
+            Set<Transition> eventTransitions = this.fromByEvent.get(event);
+            if (eventTransitions == null) {
+                eventTransitions = new HashSet<Transition>(4);
+                this.fromByEvent.put(event, eventTransitions);
+            }
+
+            eventTransitions.add(t);
+        }
     }
 
     public void addToTransition(Transition t) {
@@ -148,6 +219,21 @@ public class StateImpl implements State {
 
     public void removeFromTransition(Transition t) {
         this.fromTransitions.remove(t);
+        String event = t.eventName();
+        if (event == null || event.length() == 0) {
+            this.fromEpsilon.remove(t);
+        }
+
+        else {
+            Set<Transition> eventTransitions = this.fromByEvent.get(event);
+            if (eventTransitions != null) {
+                eventTransitions.remove(t);
+                //Drop the bucket once the event has no transitions left.
+                if (eventTransitions.isEmpty()) {
+                    this.fromByEvent.remove(event);
+                }
+            }
+        }
     }
 
     public void removeToTransition(Transition t) {
@@ -1,3 +1,4 @@
+import java.io.*;
 import java.util.*;
 
 public class TransitionImpl implements Transition {
@@ -42,12 +43,25 @@ public class TransitionImpl implements Transition {
     //in the form (without quotes, of course!):
     //"fromStateName(eventName)toStateName"
     public String toString() {
-        String transitionString = "";
-        transitionString += this.fromState.getName();
-        transitionString += "(";
-        transitionString += this.eventName;        
-        transitionString += ")";
-        transitionString += this.toState.getName();
-        return transitionString;
+        StringBuilder transitionString = new StringBuilder();
+        try {
+            this.describeTo(transitionString);
+        }
+
+        catch (IOException io) {
+            //A StringBuilder never throws IOException.
+            throw new IllegalStateException(io);
+        }
+
+        return transitionString.toString();
+    }
+
+    //Write the information returned by toString to a.
+    public void describeTo(Appendable a) throws IOException {
+        a.append(this.fromState.getName());
+        a.append('(');
+        a.append(this.eventName);
+        a.append(')');
+        a.append(this.toState.getName());
     }
 }
\ No newline at end of file
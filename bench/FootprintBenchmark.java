@@ -0,0 +1,38 @@
+public class FootprintBenchmark {
+    //Compares the heap used by an FsaImpl object graph with the heap used by its CompiledFsa.
+    //Run with: javac -d out *.java bench/*.java && java -cp out FootprintBenchmark
+    public static void main(String[] args) {
+        int n = 100000;
+        if (args.length > 0) {
+            n = Integer.parseInt(args[0]);
+        }
+
+        long before = usedHeap();
+        FsaImpl fsa = FsaLoadBenchmark.load(n, 10);
+        long graphBytes = usedHeap() - before;
+
+        before = usedHeap();
+        CompiledFsa compiled = fsa.compile();
+        long compiledBytes = usedHeap() - before;
+
+        System.out.println("states:             " + compiled.stateCount());
+        System.out.println("FsaImpl graph:      " + graphBytes + " bytes");
+        System.out.println("CompiledFsa:        " + compiledBytes + " bytes");
+        System.out.println("CompiledFsa (est.): " + compiled.footprintBytes() + " bytes");
+        System.out.println("ratio:              " + (graphBytes / Math.max(1, compiledBytes)) + "x");
+        //Keep both alive until after the measurements.
+        if (fsa.getStates().size() != compiled.stateCount()) {
+            throw new IllegalStateException("State counts differ");
+        }
+    }
+
+    //Return the heap in use after collecting garbage.
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+        }
+
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,459 @@
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.lang.management.*;
+import java.util.*;
+
+public class FsaBenchmarks {
+    //A benchmark suite for the model, I/O and simulation hot paths, over synthetic automata
+    //of 10 to 10^6 states.
+    //For each benchmark and size it reports, like JMH with its gc profiler:
+    //  throughput (operations per second),
+    //  allocation rate (MB/s) and allocation per operation (bytes/op), measured per thread,
+    //  and the number of garbage collections during the measurement.
+    //dragFrame is one frame of dragging up to 1000 selected states on FsaPanel's canvas, so its
+    //operations per second are frames per second (60 or more keeps a drag smooth).
+    //Each benchmark is warmed up, then measured over several timed iterations.
+    //A size whose single warmup operation takes longer than the time limit is reported as skipped.
+    //The 10^6 state automaton needs a heap of a few GB (java -Xmx4g).
+    //Arguments (all optional), for example:
+    //  sizes=10,100,1000 benchmarks=step,findState time=1000 warmups=2 iterations=3 limit=10000
+    private static final String[] BENCHMARKS = {
+        "newState", "newTransition", "findState", "findTransition", "toString",
+        "read", "mappedRead", "parallelLoad", "binaryLoad", "write", "binaryWrite", "step", "isRecognised", "sessionStep", "dragFrame"
+    };
+
+    //Results are written here so the JIT cannot drop the work that produced them.
+    public static volatile long sink;
+
+    private static long iterationMillis = 1000;
+    private static int warmups = 2;
+    private static int iterations = 3;
+    private static long limitMillis = 10000;
+
+    public static void main(String[] args) throws Exception {
+        String sizes = "10,100,1000,10000,100000,1000000";
+        String benchmarks = String.join(",", BENCHMARKS);
+        for (int i = 0; i < args.length; i++) {
+            String[] arg = args[i].split("=", 2);
+            if (arg.length != 2) {
+                throw new IllegalArgumentException("Expected name=value, got " + args[i]);
+            }
+
+            if (arg[0].equals("sizes")) {
+                sizes = arg[1];
+            }
+
+            else if (arg[0].equals("benchmarks")) {
+                benchmarks = arg[1];
+            }
+
+            else if (arg[0].equals("time")) {
+                iterationMillis = Long.parseLong(arg[1]);
+            }
+
+            else if (arg[0].equals("warmups")) {
+                warmups = Integer.parseInt(arg[1]);
+            }
+
+            else if (arg[0].equals("iterations")) {
+                iterations = Integer.parseInt(arg[1]);
+            }
+
+            else if (arg[0].equals("limit")) {
+                limitMillis = Long.parseLong(arg[1]);
+            }
+
+            else {
+                throw new IllegalArgumentException("Unknown argument " + arg[0]);
+            }
+        }
+
+        System.out.println(String.format("%-16s %8s %16s %12s %14s %6s", "benchmark", "states", "ops/s", "alloc MB/s", "alloc B/op", "gcs"));
+        String[] sizeList = sizes.split(",");
+        for (int i = 0; i < sizeList.length; i++) {
+            int n = Integer.parseInt(sizeList[i].trim());
+            Fixture fixture = new Fixture(n);
+            String[] benchmarkList = benchmarks.split(",");
+            for (int j = 0; j < benchmarkList.length; j++) {
+                run(benchmarkList[j].trim(), fixture);
+            }
+        }
+    }
+
+    //The automaton and inputs each benchmark of one size runs over.
+    private static class Fixture {
+        private final int n;
+        private final FsaImpl fsa;
+        private final String[] names;
+        private final State[] states;
+        private final Transition[] transitions;
+        private final String text;
+        private final File file;
+        private final File binaryFile;
+        private final String[] events;
+        private final FsaSim session;
+        //The canvas the dragFrame benchmark draws the FSA on, made when first used, and the image it paints.
+        private FsaPanel panel;
+        private BufferedImage image;
+
+        private Fixture(int nIn) throws IOException {
+            this.n = nIn;
+            this.fsa = build(nIn);
+            this.names = new String[nIn];
+            this.states = new State[nIn];
+            for (int i = 0; i < nIn; i++) {
+                this.names[i] = "s" + i;
+                this.states[i] = this.fsa.findState(this.names[i]);
+            }
+
+            List<Transition> all = new ArrayList<Transition>();
+            for (int i = 0; i < nIn; i++) {
+                all.addAll(this.states[i].transitionsFrom());
+            }
+
+            this.transitions = all.toArray(new Transition[all.size()]);
+            this.text = records(this.fsa, this.transitions);
+            this.file = File.createTempFile("fsa-bench", ".fsa");
+            this.file.deleteOnExit();
+            try (Writer w = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(this.file), "UTF-8"))) {
+                w.write(this.text);
+            }
+
+            this.binaryFile = File.createTempFile("fsa-bench", ".fsab");
+            this.binaryFile.deleteOnExit();
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(this.binaryFile))) {
+                new FsaBinaryReaderWriter().write(out, this.fsa);
+            }
+
+            Random random = new Random(3);
+            this.events = new String[1 << 16];
+            for (int i = 0; i < this.events.length; i++) {
+                this.events[i] = random.nextBoolean() ? "a" : "b";
+            }
+
+            this.fsa.reset();
+            this.session = this.fsa.newSession();
+        }
+
+        //Return the canvas showing the FSA, with its first (up to) 1000 states selected.
+        private FsaPanel panel() {
+            if (this.panel == null) {
+                this.panel = new FsaPanel(this.fsa);
+                this.panel.setCanvas(true);
+                this.panel.setSize(600, 570);
+                //Deliver the changes at once, as the benchmark has no event dispatch thread to wait for.
+                FsaEventBus events = new FsaEventBus(Runnable::run);
+                events.addListener(this.panel);
+                events.attach(this.fsa);
+                for (int i = 0; i < Math.min(1000, this.n); i++) {
+                    this.panel.select(this.states[i], true);
+                }
+
+                this.image = new BufferedImage(600, 570, BufferedImage.TYPE_INT_RGB);
+            }
+
+            return this.panel;
+        }
+    }
+
+    //Build an automaton of n states, each with an a-transition and a b-transition to random other states.
+    //s0 is initial, and every 7th state is final.
+    private static FsaImpl build(int n) {
+        FsaImpl fsa = new FsaImpl();
+        State[] states = new State[n];
+        for (int i = 0; i < n; i++) {
+            states[i] = fsa.newState("s" + i, (i % 100) * 150, (i / 100) * 200);
+        }
+
+        Random random = new Random(1);
+        for (int i = 0; i < n; i++) {
+            fsa.newTransition(states[i], states[other(random, i, n)], "a");
+            fsa.newTransition(states[i], states[other(random, i, n)], "b");
+            if (i % 7 == 0) {
+                states[i].setFinal(true);
+            }
+        }
+
+        states[0].setInitial(true);
+        return fsa;
+    }
+
+    //Return a random state number from 0 to n-1, other than i.
+    private static int other(Random random, int i, int n) {
+        int other = random.nextInt(n - 1);
+        return other < i ? other : other + 1;
+    }
+
+    //Return the text records describing the FSA, as read by FsaReaderWriter.
+    private static String records(Fsa fsa, Transition[] transitions) {
+        StringBuilder records = new StringBuilder();
+        Iterator it = fsa.getStates().iterator();
+        while (it.hasNext()) {
+            State s = (State)it.next();
+            records.append("state ").append(s.getName()).append(' ').append(s.getXpos()).append(' ').append(s.getYpos()).append('\n');
+        }
+
+        for (int i = 0; i < transitions.length; i++) {
+            Transition t = transitions[i];
+            records.append("transition ").append(t.fromState().getName()).append(' ').append(t.eventName()).append(' ').append(t.toState().getName()).append('\n');
+        }
+
+        it = fsa.getInitialStates().iterator();
+        while (it.hasNext()) {
+            records.append("initial ").append(((State)it.next()).getName()).append('\n');
+        }
+
+        it = fsa.getFinalStates().iterator();
+        while (it.hasNext()) {
+            records.append("final ").append(((State)it.next()).getName()).append('\n');
+        }
+
+        return records.toString();
+    }
+
+    //Perform the benchmark's operation on the fixture, and return the number of operations done.
+    private static long operation(String benchmark, Fixture f, long iteration) throws Exception {
+        int n = f.n;
+        if (benchmark.equals("newState")) {
+            FsaImpl fsa = new FsaImpl();
+            for (int i = 0; i < n; i++) {
+                fsa.newState(f.names[i], i, i);
+            }
+
+            sink += fsa.getStates().size();
+            return n;
+        }
+
+        if (benchmark.equals("newTransition")) {
+            //Add every transition of the fixture to a new FSA with the same states.
+            FsaImpl fsa = new FsaImpl();
+            State[] states = new State[n];
+            for (int i = 0; i < n; i++) {
+                states[i] = fsa.newState(f.names[i], 0, 0);
+            }
+
+            Transition[] added = new Transition[f.transitions.length];
+            for (int i = 0; i < f.transitions.length; i++) {
+                Transition t = f.transitions[i];
+                added[i] = fsa.newTransition(fsa.findState(t.fromState().getName()), fsa.findState(t.toState().getName()), t.eventName());
+            }
+
+            sink += added.length;
+            return f.transitions.length;
+        }
+
+        if (benchmark.equals("findState")) {
+            int ops = 1024;
+            int base = (int)(iteration * 7919);
+            for (int i = 0; i < ops; i++) {
+                sink += f.fsa.findState(f.names[(base + i * 31) % n]).getXpos();
+            }
+
+            return ops;
+        }
+
+        if (benchmark.equals("findTransition")) {
+            int ops = 1024;
+            int base = (int)(iteration * 7919);
+            for (int i = 0; i < ops; i++) {
+                Transition t = f.transitions[(base + i * 31) % f.transitions.length];
+                sink += f.fsa.findTransition(t.fromState(), t.toState()).size();
+            }
+
+            return ops;
+        }
+
+        if (benchmark.equals("toString")) {
+            sink += f.fsa.toString().length();
+            return 1;
+        }
+
+        if (benchmark.equals("read")) {
+            FsaImpl fsa = new FsaImpl();
+            new FsaReaderWriter().read(new StringReader(f.text), fsa);
+            sink += fsa.getStates().size();
+            return 1;
+        }
+
+        if (benchmark.equals("mappedRead")) {
+            FsaImpl fsa = new FsaImpl();
+            new MappedFsaReader().read(f.file, fsa);
+            sink += fsa.getStates().size();
+            return 1;
+        }
+
+        if (benchmark.equals("parallelLoad")) {
+            FsaImpl fsa = new ParallelFsaLoader().load(f.file);
+            sink += fsa.getStates().size();
+            return 1;
+        }
+
+        if (benchmark.equals("binaryLoad")) {
+            CompiledFsa c = new FsaBinaryReaderWriter().readCompiled(f.binaryFile);
+            sink += c.stateCount();
+            return 1;
+        }
+
+        if (benchmark.equals("write")) {
+            CountingWriter w = new CountingWriter();
+            new FsaReaderWriter().write(w, f.fsa);
+            sink += w.count;
+            return 1;
+        }
+
+        if (benchmark.equals("binaryWrite")) {
+            CountingOutputStream out = new CountingOutputStream();
+            new FsaBinaryReaderWriter().write(out, f.fsa);
+            sink += out.count;
+            return 1;
+        }
+
+        if (benchmark.equals("step")) {
+            int ops = 1024;
+            int base = (int)(iteration * 1024);
+            for (int i = 0; i < ops; i++) {
+                f.fsa.step(f.events[(base + i) & (f.events.length - 1)]);
+            }
+
+            //Start again from the initial states, in case the frontier emptied.
+            if (f.fsa.getCurrentStates().isEmpty()) {
+                f.fsa.reset();
+            }
+
+            return ops;
+        }
+
+        if (benchmark.equals("isRecognised")) {
+            int ops = 1024;
+            for (int i = 0; i < ops; i++) {
+                if (f.fsa.isRecognised()) {
+                    sink++;
+                }
+            }
+
+            return ops;
+        }
+
+        if (benchmark.equals("sessionStep")) {
+            int ops = 1024;
+            int base = (int)(iteration * 1024);
+            for (int i = 0; i < ops; i++) {
+                f.session.step(f.events[(base + i) & (f.events.length - 1)]);
+                if (f.session.isRecognised()) {
+                    sink++;
+                }
+            }
+
+            return ops;
+        }
+
+        if (benchmark.equals("dragFrame")) {
+            //Move the selection by one pixel (back and forth, so the FSA stays put), and paint the view.
+            FsaPanel panel = f.panel();
+            int d = (iteration & 1) == 0 ? 1 : -1;
+            Iterator it = panel.getSelectedStates().iterator();
+            while (it.hasNext()) {
+                ((State)it.next()).moveBy(d, d);
+            }
+
+            Graphics g = f.image.getGraphics();
+            panel.paint(g);
+            g.dispose();
+            sink += panel.getLastFrameNanos();
+            return 1;
+        }
+
+        throw new IllegalArgumentException("Unknown benchmark " + benchmark);
+    }
+
+    //Warm up and measure one benchmark, and print its results.
+    private static void run(String benchmark, Fixture f) throws Exception {
+        //Check that one operation fits in the time limit, before committing to whole iterations.
+        long start = System.nanoTime();
+        operation(benchmark, f, 0);
+        if ((System.nanoTime() - start) / 1000000 > limitMillis) {
+            System.out.println(String.format("%-16s %8d %16s", benchmark, f.n, "skipped (slow)"));
+            return;
+        }
+
+        long[] counter = new long[1];
+        for (int i = 0; i < warmups; i++) {
+            iteration(benchmark, f, counter);
+        }
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        long ops = 0;
+        long nanos = 0;
+        long allocated = 0;
+        long gcs = 0;
+        for (int i = 0; i < iterations; i++) {
+            long gcsBefore = gcCount();
+            long allocatedBefore = threads.getThreadAllocatedBytes(thread);
+            long before = System.nanoTime();
+            ops += iteration(benchmark, f, counter);
+            nanos += System.nanoTime() - before;
+            allocated += threads.getThreadAllocatedBytes(thread) - allocatedBefore;
+            gcs += gcCount() - gcsBefore;
+        }
+
+        double seconds = nanos / 1e9;
+        System.out.println(String.format("%-16s %8d %16.1f %12.1f %14.1f %6d",
+            benchmark, f.n, ops / seconds, allocated / seconds / (1024 * 1024), (double)allocated / ops, gcs));
+    }
+
+    //Repeat the operation for one iteration time, and return the number of operations done.
+    private static long iteration(String benchmark, Fixture f, long[] counter) throws Exception {
+        long ops = 0;
+        long end = System.nanoTime() + iterationMillis * 1000000;
+        do {
+            ops += operation(benchmark, f, counter[0]++);
+        }
+        while (System.nanoTime() < end);
+        return ops;
+    }
+
+    //Return the total number of garbage collections so far.
+    private static long gcCount() {
+        long count = 0;
+        Iterator it = ManagementFactory.getGarbageCollectorMXBeans().iterator();
+        while (it.hasNext()) {
+            count += Math.max(0, ((GarbageCollectorMXBean)it.next()).getCollectionCount());
+        }
+
+        return count;
+    }
+
+    //An OutputStream that only counts the bytes written to it.
+    private static class CountingOutputStream extends OutputStream {
+        private long count;
+
+        public void write(int b) {
+            this.count++;
+        }
+
+        public void write(byte[] buf, int off, int len) {
+            this.count += len;
+        }
+    }
+
+    //A Writer that only counts the characters written to it.
+    private static class CountingWriter extends Writer {
+        private long count;
+
+        public void write(char[] buf, int off, int len) {
+            this.count += len;
+        }
+
+        public void write(String str) {
+            this.count += str.length();
+        }
+
+        public void flush() {
+        }
+
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,47 @@
+import java.util.*;
+
+public class FsaLoadBenchmark {
+    //Loads synthetic automata of doubling size into an FsaImpl, through newState, findState and newTransition,
+    //the same way FsaReaderWriter does.
+    //If loading is linear, the time per element stays roughly constant as the automaton grows.
+    //Run with: javac -d out *.java bench/FsaLoadBenchmark.java && java -cp out FsaLoadBenchmark
+    public static void main(String[] args) {
+        int maxStates = 200000;
+        if (args.length > 0) {
+            maxStates = Integer.parseInt(args[0]);
+        }
+
+        //Warm up the JIT before measuring.
+        load(maxStates / 16, 10);
+        load(maxStates / 16, 10);
+
+        System.out.println("states\ttransitions\tms\tns/element");
+        for (int n = maxStates / 16; n <= maxStates; n *= 2) {
+            long start = System.nanoTime();
+            load(n, 10);
+            long elapsed = System.nanoTime() - start;
+            long elements = (long)n * 11;
+            System.out.println(n + "\t" + (n * 10) + "\t" + (elapsed / 1000000) + "\t" + (elapsed / elements));
+        }
+    }
+
+    //Build an FSA with n states, each with fanOut outgoing transitions.
+    public static FsaImpl load(int n, int fanOut) {
+        FsaImpl fsa = new FsaImpl();
+        Random random = new Random(42);
+        for (int i = 0; i < n; i++) {
+            fsa.newState("s" + i, random.nextInt(600), random.nextInt(600));
+        }
+
+        for (int i = 0; i < n; i++) {
+            State from = fsa.findState("s" + i);
+            for (int j = 0; j < fanOut; j++) {
+                State to = fsa.findState("s" + random.nextInt(n));
+                //Each edge from a state gets its own event, so no transition is a duplicate.
+                fsa.newTransition(from, to, "e" + (char)('a' + j));
+            }
+        }
+
+        return fsa;
+    }
+}
@@ -0,0 +1,110 @@
+import java.io.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+
+public class ReaderAgreementTest {
+    //Checks that the readers of FSA files (MappedFsaReader, ParallelFsaLoader) and FsaValidator
+    //accept exactly the files FsaReaderWriter accepts, and report the same line for those they do not.
+    //First a file using keywords that only start with the keyword (as FsaReaderWriter allows) must be
+    //read by all of them, then random files built from valid and invalid lines must get the same answer.
+    //Exits with status 1 if any file is read differently.
+    //Run with: javac -d out *.java bench/*.java && java -cp out ReaderAgreementTest
+    private static final String[] LINES = {
+        "state a 1 2", "statex b 3 4", "stat c 1 1", "xtate d 1 1",
+        "transition a x b", "transitionx a y b", "transitio a z b", "transition a ? a", "transition a x zz",
+        "initial a", "initialx b", "init a", "final b", "finalz a", "fin\u000bal b",
+        "  state e 1 1  ", "\u0001state f 1 1\u0001", "state g\u000b1 1", "state h\t-1\f-2", "state i - 2",
+        "state j \u0661\u0662 3", "state k 1 +2", "state l 99999999999 1", "state a 9 9",
+        "# comment", "", "   ", "\u000b"
+    };
+
+    public static void main(String[] args) throws IOException {
+        File file = File.createTempFile("agreement", ".fsa");
+        file.deleteOnExit();
+        int failures = 0;
+
+        write(file, "statex a 1 2\nstates b 3 4\ntransitionx a x b\ninitialx a\nfinals b\n");
+        String[] results = readAll(file);
+        if (!results[0].equals("ok")) {
+            System.out.println("FsaReaderWriter rejects prefixed keywords: " + results[0]);
+            failures++;
+        }
+
+        failures += check(file, results);
+
+        Random random = new Random(42);
+        for (int i = 0; i < 2000; i++) {
+            StringBuilder text = new StringBuilder();
+            int lines = 1 + random.nextInt(6);
+            for (int j = 0; j < lines; j++) {
+                text.append(LINES[random.nextInt(LINES.length)]);
+                text.append(random.nextBoolean() ? "\n" : "\r\n");
+            }
+
+            write(file, text.toString());
+            failures += check(file, readAll(file));
+        }
+
+        System.out.println(failures == 0 ? "All readers agree" : failures + " files read differently");
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    //Return 1 (after printing the file and the results) if the results are not all the same, or 0.
+    private static int check(File file, String[] results) throws IOException {
+        for (int i = 1; i < results.length; i++) {
+            if (!results[i].equals(results[0])) {
+                String text = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+                System.out.println(Arrays.toString(results) + " for " + text.replace("\r", "\\r").replace("\n", "\\n"));
+                return 1;
+            }
+        }
+
+        return 0;
+    }
+
+    //Read the file with FsaReaderWriter, MappedFsaReader, ParallelFsaLoader and FsaValidator,
+    //and return "ok" or the line of the first error for each.
+    private static String[] readAll(File file) throws IOException {
+        String[] results = new String[4];
+        for (int i = 0; i < results.length; i++) {
+            try {
+                FsaImpl f = new FsaImpl();
+                if (i == 0) {
+                    try (Reader r = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+                        new FsaReaderWriter().read(r, f);
+                    }
+                }
+
+                else if (i == 1) {
+                    new MappedFsaReader().read(file, f);
+                }
+
+                else if (i == 2) {
+                    new ParallelFsaLoader().read(file, f);
+                }
+
+                else {
+                    FsaValidator.Report report = new FsaValidator().validate(file);
+                    if (!report.isValid()) {
+                        throw report.getErrors().get(0);
+                    }
+                }
+
+                results[i] = "ok";
+            }
+
+            catch (FsaFormatException e) {
+                results[i] = "line " + e.getLineNr();
+            }
+        }
+
+        return results;
+    }
+
+    private static void write(File file, String text) throws IOException {
+        Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8));
+    }
+}
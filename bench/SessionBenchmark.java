@@ -0,0 +1,59 @@
+import java.util.*;
+import java.util.concurrent.*;
+
+public class SessionBenchmark {
+    //Drives many simulation sessions of one shared FsaImpl from a thread pool,
+    //and checks that every session ends in the same state as a single-threaded run.
+    //Run with: javac -d out *.java bench/*.java && java -cp out SessionBenchmark
+    public static void main(String[] args) throws Exception {
+        int sessions = 2000;
+        final int events = 20000;
+        final FsaImpl fsa = SimBenchmark.build(10000);
+        final String[] input = new String[events];
+        Random random = new Random(11);
+        for (int i = 0; i < input.length; i++) {
+            input[i] = random.nextBoolean() ? "a" : "b";
+        }
+
+        //The result each session should reach.
+        FsaSim expected = fsa.newSession();
+        int expectedAccepted = run(expected, input);
+
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+        long start = System.nanoTime();
+        for (int s = 0; s < sessions; s++) {
+            results.add(pool.submit(new Callable<Integer>() {
+                public Integer call() {
+                    return run(fsa.newSession(), input);
+                }
+            } ));
+        }
+
+        for (int s = 0; s < sessions; s++) {
+            if (results.get(s).get() != expectedAccepted) {
+                throw new IllegalStateException("Session " + s + " differs from the single-threaded run");
+            }
+        }
+
+        long elapsed = System.nanoTime() - start;
+        pool.shutdown();
+        System.out.println(sessions + " sessions on " + threads + " threads: "
+            + ((long)sessions * events * 1000000000L / elapsed) + " events/s in total");
+    }
+
+    //Step the session through the input, and return how many steps ended in an accepting state.
+    private static int run(FsaSim session, String[] input) {
+        session.reset();
+        int accepted = 0;
+        for (int i = 0; i < input.length; i++) {
+            session.step(input[i]);
+            if (session.isRecognised()) {
+                accepted++;
+            }
+        }
+
+        return accepted;
+    }
+}
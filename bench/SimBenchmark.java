@@ -0,0 +1,83 @@
+import java.util.*;
+
+public class SimBenchmark {
+    //Measures how many events per second FrontierSim and LazyDfaSim step through,
+    //on a nondeterministic automaton with some epsilon-transitions.
+    //Run with: javac -d out *.java bench/*.java && java -cp out SimBenchmark
+    public static void main(String[] args) {
+        int n = 10000;
+        int events = 20000000;
+        if (args.length > 0) {
+            n = Integer.parseInt(args[0]);
+        }
+
+        FsaImpl fsa = build(n);
+        CompiledFsa compiled = fsa.compile();
+        int[] input = new int[1 << 16];
+        Random random = new Random(7);
+        for (int i = 0; i < input.length; i++) {
+            input[i] = random.nextInt(compiled.eventCount());
+        }
+
+        FrontierSim sim = new FrontierSim(compiled);
+        for (int round = 0; round < 3; round++) {
+            sim.reset();
+            int accepted = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < events; i++) {
+                sim.step(input[i & (input.length - 1)]);
+                if (sim.isRecognised()) {
+                    accepted++;
+                }
+            }
+
+            long elapsed = System.nanoTime() - start;
+            System.out.println("FrontierSim round " + round + ": " + (events * 1000000000L / elapsed) + " events/s (" + accepted + " accepting)");
+        }
+
+        LazyDfaSim dfa = new LazyDfaSim(compiled);
+        for (int round = 0; round < 3; round++) {
+            dfa.reset();
+            int accepted = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < events; i++) {
+                dfa.step(input[i & (input.length - 1)]);
+                if (dfa.isRecognised()) {
+                    accepted++;
+                }
+            }
+
+            long elapsed = System.nanoTime() - start;
+            System.out.println("LazyDfaSim round " + round + ": " + (events * 1000000000L / elapsed) + " events/s (" + accepted + " accepting, "
+                + dfa.getHits() + " hits, " + dfa.getMisses() + " misses, " + dfa.getFlushes() + " flushes, " + dfa.getCachedStates() + " states)");
+        }
+    }
+
+    //Build an automaton of n states over the events a and b.
+    //Each state has an a-transition to its successor and a b-transition back to the start.
+    //Every 16th state also has an a-transition to the second state and an epsilon-transition back to the start,
+    //so the frontier is nondeterministic, but each b event collapses it again.
+    public static FsaImpl build(int n) {
+        FsaImpl fsa = new FsaImpl();
+        State[] states = new State[n];
+        for (int i = 0; i < n; i++) {
+            states[i] = fsa.newState("s" + i, 0, 0);
+        }
+
+        for (int i = 0; i < n; i++) {
+            fsa.newTransition(states[i], states[(i + 1) % n], "a");
+            fsa.newTransition(states[i], states[0], "b");
+            if (i % 16 == 15) {
+                fsa.newTransition(states[i], states[1], "a");
+                fsa.newTransition(states[i], states[0], null);
+            }
+
+            if (i % 7 == 0) {
+                states[i].setFinal(true);
+            }
+        }
+
+        states[0].setInitial(true);
+        return fsa;
+    }
+}